@@ -0,0 +1,39 @@
+package com.udacity.jwdnd.c1.review.benchmark;
+
+import com.udacity.jwdnd.c1.review.ReviewApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Boots the full application against a private in-memory H2 database for a benchmark trial.
+ */
+final class BenchmarkApplication {
+    private BenchmarkApplication() {
+    }
+
+    static ConfigurableApplicationContext start(String databaseName) {
+        return new SpringApplicationBuilder(ReviewApplication.class).run(
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:" + databaseName + ";DB_CLOSE_DELAY=-1",
+                "--spring.devtools.restart.enabled=false",
+                "--logging.level.root=WARN",
+                "--logging.level.org.springframework.web=WARN",
+                "--logging.level.com.udacity.jwdnd.c1.review=WARN");
+    }
+
+    static void createUser(JdbcTemplate jdbcTemplate, String userName) {
+        jdbcTemplate.update("INSERT INTO USERS (username) SELECT ? FROM DUAL "
+                + "WHERE NOT EXISTS (SELECT 1 FROM USERS WHERE username = ?)", userName, userName);
+    }
+
+    static void resetMessages(JdbcTemplate jdbcTemplate, int rows) {
+        jdbcTemplate.update("DELETE FROM MESSAGES");
+        for (int i = 0; i < 100; i++) {
+            createUser(jdbcTemplate, "user" + i);
+        }
+        jdbcTemplate.update("INSERT INTO MESSAGES (room, roomseq, userid, messagetext) "
+                + "SELECT 'general', X, (SELECT userid FROM USERS WHERE username = 'user' || MOD(X, 100)), "
+                + "'benchmark message ' || X FROM SYSTEM_RANGE(1, ?)", rows);
+    }
+}
@@ -0,0 +1,90 @@
+package com.udacity.jwdnd.c1.review.benchmark;
+
+import com.udacity.jwdnd.c1.review.model.ChatForm;
+import com.udacity.jwdnd.c1.review.model.ChatMessage;
+import com.udacity.jwdnd.c1.review.model.MessagePage;
+import com.udacity.jwdnd.c1.review.model.MessageType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.servlet.DispatcherServlet;
+import org.springframework.web.servlet.View;
+import org.thymeleaf.spring5.view.ThymeleafViewResolver;
+
+import javax.servlet.ServletContext;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders chat.html through the application's Thymeleaf view, with the model the chat controller builds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ChatRenderBenchmark {
+    @Param({"10", "100", "1000"})
+    public int messages;
+
+    private ConfigurableApplicationContext context;
+    private ServletContext servletContext;
+    private View chatView;
+    private Map<String, Object> model;
+
+    @Setup
+    public void setUp() throws Exception {
+        context = BenchmarkApplication.start("chatRender");
+        servletContext = ((WebApplicationContext) context).getServletContext();
+        chatView = context.getBean(ThymeleafViewResolver.class).resolveViewName("chat", Locale.ENGLISH);
+
+        List<ChatMessage> chatMessages = new ArrayList<>(messages);
+        for (int i = 1; i <= messages; i++) {
+            chatMessages.add(new ChatMessage(i, "general", i, "user" + (i % 100), "benchmark message " + i));
+        }
+        ChatForm chatForm = new ChatForm();
+        chatForm.setRoom("general");
+        chatForm.setMessageType(MessageType.SAY);
+
+        model = new HashMap<>();
+        model.put("chatForm", chatForm);
+        model.put("chatPage", new MessagePage(chatMessages, null, null));
+        model.put("chatMessages", chatMessages);
+        model.put("room", "general");
+        model.put("lastRoomSeq", messages);
+        model.put("username", "benchmark");
+        model.put("MessageTypes", MessageType.values());
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public String renderChat() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest(servletContext, "GET", "/chat");
+        request.setAttribute(DispatcherServlet.WEB_APPLICATION_CONTEXT_ATTRIBUTE, context);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        chatView.render(model, request, response);
+        return response.getContentAsString();
+    }
+}
@@ -0,0 +1,58 @@
+package com.udacity.jwdnd.c1.review.benchmark;
+
+import com.udacity.jwdnd.c1.review.service.HashService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class HashServiceBenchmark {
+    private HashService hashService;
+
+    @Setup
+    public void setUp() {
+        // queue large enough that Threads.MAX never trips the fail-fast limit; calibration off so the cost is
+        // the same on every machine
+        hashService = new HashService(0, 1024, 60000, 0, HashService.LEGACY_ITERATIONS,
+                HashService.LEGACY_ITERATIONS, HashService.LEGACY_KEY_LENGTH);
+    }
+
+    @TearDown
+    public void tearDown() {
+        hashService.shutdown();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String hashOneThread() {
+        return hashService.getHashedValue("benchmark-password", "c2FsdHNhbHRzYWx0c2FsdA==");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String hashFourThreads() {
+        return hashService.getHashedValue("benchmark-password", "c2FsdHNhbHRzYWx0c2FsdA==");
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String hashMaxThreads() {
+        return hashService.getHashedValue("benchmark-password", "c2FsdHNhbHRzYWx0c2FsdA==");
+    }
+}
@@ -0,0 +1,53 @@
+package com.udacity.jwdnd.c1.review.benchmark;
+
+import com.udacity.jwdnd.c1.review.mapper.MessageMapper;
+import com.udacity.jwdnd.c1.review.model.ChatMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class MessageMapperBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    private ConfigurableApplicationContext context;
+    private MessageMapper messageMapper;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkApplication.start("messageMapper");
+        BenchmarkApplication.resetMessages(context.getBean(JdbcTemplate.class), rows);
+        messageMapper = context.getBean(MessageMapper.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    // a chat page: the newest chat.page-size rows, read backwards along the primary key
+    @Benchmark
+    public List<ChatMessage> getLatestMessages() {
+        return messageMapper.getLatestMessages(50);
+    }
+}
@@ -0,0 +1,52 @@
+package com.udacity.jwdnd.c1.review.benchmark;
+
+import com.udacity.jwdnd.c1.review.model.MessageType;
+import com.udacity.jwdnd.c1.review.service.MessageService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class MessageServiceBenchmark {
+    @Param({"SAY", "SHOUT", "WHISPER"})
+    public MessageType messageType;
+
+    private ConfigurableApplicationContext context;
+    private MessageService messageService;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkApplication.start("messageService");
+        BenchmarkApplication.createUser(context.getBean(JdbcTemplate.class), "benchmark");
+        messageService = context.getBean(MessageService.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void addChatMessage() {
+        messageService.addChatMessage("benchmark", MessageService.DEFAULT_ROOM, "Hello from the benchmark",
+                messageType);
+    }
+}
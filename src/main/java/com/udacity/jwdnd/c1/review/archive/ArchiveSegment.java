@@ -0,0 +1,191 @@
+package com.udacity.jwdnd.c1.review.archive;
+
+import com.udacity.jwdnd.c1.review.model.ChatMessage;
+import com.udacity.jwdnd.c1.review.model.MessageType;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * One immutable archive file: a gzip stream with a header followed by the messages of one room over a range
+ * of sequence numbers, oldest first. The header repeats the room and the ranges so the archive can be indexed
+ * without decoding the messages. Files are written under a temporary name, synced and then moved into place,
+ * so a segment is either there completely or not at all.
+ */
+class ArchiveSegment {
+    static final String SUFFIX = ".seg.gz";
+    static final String TEMP_SUFFIX = ".tmp";
+
+    private static final int MAGIC = 0x43484131;
+    private static final byte FORMAT_VERSION = 1;
+    private static final byte NO_TYPE = -1;
+    private static final long NO_TIME = Long.MIN_VALUE;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private Path path;
+    private String room;
+    private int messageCount;
+    private int firstSeq;
+    private int lastSeq;
+    private int minId;
+    private int maxId;
+
+    private ArchiveSegment(Path path, String room, int messageCount, int firstSeq, int lastSeq, int minId,
+                           int maxId) {
+        this.path = path;
+        this.room = room;
+        this.messageCount = messageCount;
+        this.firstSeq = firstSeq;
+        this.lastSeq = lastSeq;
+        this.minId = minId;
+        this.maxId = maxId;
+    }
+
+    static String fileName(int firstSeq, int lastSeq) {
+        return String.format("%010d-%010d", firstSeq, lastSeq) + SUFFIX;
+    }
+
+    /**
+     * Writes the messages, which must all be from {@code room} and sorted by sequence number, as a new segment.
+     */
+    static ArchiveSegment write(Path directory, String room, List<ChatMessage> messages) throws IOException {
+        int firstSeq = messages.get(0).getRoomSeq();
+        int lastSeq = messages.get(messages.size() - 1).getRoomSeq();
+        int minId = Integer.MAX_VALUE;
+        int maxId = Integer.MIN_VALUE;
+        for (ChatMessage chatMessage : messages) {
+            minId = Math.min(minId, chatMessage.getMessageId());
+            maxId = Math.max(maxId, chatMessage.getMessageId());
+        }
+
+        Path path = directory.resolve(fileName(firstSeq, lastSeq));
+        Path temp = directory.resolve(path.getFileName() + TEMP_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(temp), BUFFER_SIZE), BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeByte(FORMAT_VERSION);
+            out.writeUTF(room);
+            out.writeInt(messages.size());
+            out.writeInt(firstSeq);
+            out.writeInt(lastSeq);
+            out.writeInt(minId);
+            out.writeInt(maxId);
+            for (ChatMessage chatMessage : messages) {
+                out.writeInt(chatMessage.getMessageId());
+                out.writeInt(chatMessage.getRoomSeq());
+                out.writeInt(chatMessage.getUserId());
+                out.writeByte(chatMessage.getMessageType() != null ? chatMessage.getMessageType().ordinal() : NO_TYPE);
+                out.writeLong(chatMessage.getCreatedAt() != null ? chatMessage.getCreatedAt().toEpochMilli() : NO_TIME);
+                byte[] text = chatMessage.getMessageText().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(text.length);
+                out.write(text);
+            }
+        }
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+        return new ArchiveSegment(path, room, messages.size(), firstSeq, lastSeq, minId, maxId);
+    }
+
+    /**
+     * Reads the header of an existing segment.
+     */
+    static ArchiveSegment open(Path path) throws IOException {
+        try (DataInputStream in = openStream(path)) {
+            return new ArchiveSegment(path, in.readUTF(), in.readInt(), in.readInt(), in.readInt(), in.readInt(),
+                    in.readInt());
+        }
+    }
+
+    /**
+     * Decodes all messages of the segment, oldest first. Their author names are left to the caller.
+     */
+    List<ChatMessage> read() throws IOException {
+        try (DataInputStream in = openStream(path)) {
+            in.readUTF();
+            int count = in.readInt();
+            // skip the rest of the header
+            in.skipBytes(16);
+            List<ChatMessage> messages = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int messageId = in.readInt();
+                int roomSeq = in.readInt();
+                int userId = in.readInt();
+                byte messageType = in.readByte();
+                long createdAt = in.readLong();
+                byte[] text = new byte[in.readInt()];
+                in.readFully(text);
+
+                ChatMessage chatMessage = new ChatMessage(messageId, room, roomSeq, null,
+                        new String(text, StandardCharsets.UTF_8));
+                chatMessage.setUserId(userId);
+                if (messageType != NO_TYPE) {
+                    chatMessage.setMessageType(MessageType.values()[messageType]);
+                }
+                if (createdAt != NO_TIME) {
+                    chatMessage.setCreatedAt(Instant.ofEpochMilli(createdAt));
+                }
+                messages.add(chatMessage);
+            }
+            return messages;
+        }
+    }
+
+    void delete() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    boolean containsAnyId(Iterable<Integer> ids) {
+        for (Integer id : ids) {
+            if (id >= minId && id <= maxId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    String getRoom() {
+        return room;
+    }
+
+    int getMessageCount() {
+        return messageCount;
+    }
+
+    int getFirstSeq() {
+        return firstSeq;
+    }
+
+    int getLastSeq() {
+        return lastSeq;
+    }
+
+    private static DataInputStream openStream(Path path) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(path), BUFFER_SIZE), BUFFER_SIZE));
+        if (in.readInt() != MAGIC || in.readByte() != FORMAT_VERSION) {
+            in.close();
+            throw new IOException("Not an archive segment: " + path);
+        }
+        return in;
+    }
+}
@@ -0,0 +1,362 @@
+package com.udacity.jwdnd.c1.review.archive;
+
+import com.udacity.jwdnd.c1.review.model.ChatMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Cold storage for messages that {@link MessageArchiver} moved out of MESSAGES. Every room has a directory of
+ * immutable {@link ArchiveSegment}s over consecutive sequence ranges; their headers are indexed in memory when
+ * the application starts, and the last {@code chat.retention.archive.cache-segments} segments read by pages
+ * are kept decoded. Readers never lock: appends and compaction swap whole segments in and out of the index,
+ * and every read only takes sequence numbers beyond what it has already returned, so a reader that sees a
+ * merged segment next to the ones it replaces still returns each message once.
+ */
+@Component
+public class MessageArchive {
+    private static final Pattern PLAIN_ROOM = Pattern.compile("[a-z0-9][a-z0-9_-]*");
+    private static final int MERGE_FAN_IN = 4;
+
+    private Logger logger = LoggerFactory.getLogger(MessageArchive.class);
+
+    private Path directory;
+    private int segmentMessages;
+    private ConcurrentMap<String, NavigableMap<Integer, ArchiveSegment>> rooms = new ConcurrentHashMap<>();
+    private Map<ArchiveSegment, List<ChatMessage>> decoded;
+    private ReadWriteLock moveLock = new ReentrantReadWriteLock();
+
+    public MessageArchive(@Value("${chat.retention.archive.directory:data/archive}") String directory,
+                          @Value("${chat.retention.archive.segment-messages:10000}") int segmentMessages,
+                          @Value("${chat.retention.archive.cache-segments:16}") int cacheSegments) {
+        this.directory = Paths.get(directory);
+        this.segmentMessages = segmentMessages;
+        this.decoded = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ArchiveSegment, List<ChatMessage>> eldest) {
+                return size() > cacheSegments;
+            }
+        });
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        List<Path> roomDirectories;
+        try (Stream<Path> listing = Files.list(directory)) {
+            roomDirectories = listing.filter(Files::isDirectory).collect(Collectors.toList());
+        }
+        int segments = 0;
+        for (Path roomDirectory : roomDirectories) {
+            segments += openRoom(roomDirectory);
+        }
+        logger.info("Opened message archive in " + directory + " with " + segments + " segment(s) of "
+                + rooms.size() + " room(s), " + getMessageCount() + " messages");
+    }
+
+    public boolean isEmpty() {
+        return rooms.values().stream().allMatch(Map::isEmpty);
+    }
+
+    public int getSegmentCount() {
+        return rooms.values().stream().mapToInt(Map::size).sum();
+    }
+
+    public long getMessageCount() {
+        return rooms.values().stream()
+                .flatMap(segments -> segments.values().stream())
+                .mapToLong(ArchiveSegment::getMessageCount)
+                .sum();
+    }
+
+    /**
+     * Held for reading by whoever has to see MESSAGES and the archive as one, like a bulk export; the archiver
+     * moves every batch under the write lock, so no message moves meanwhile.
+     */
+    public ReadWriteLock getMoveLock() {
+        return moveLock;
+    }
+
+    /**
+     * The newest archived sequence number of every room that has archived messages.
+     */
+    public Map<String, Integer> getLastRoomSeqs() {
+        Map<String, Integer> lastSeqs = new HashMap<>();
+        for (String room : rooms.keySet()) {
+            Integer lastSeq = getLastRoomSeq(room);
+            if (lastSeq != null) {
+                lastSeqs.put(room, lastSeq);
+            }
+        }
+        return lastSeqs;
+    }
+
+    public Integer getLastRoomSeq(String room) {
+        NavigableMap<Integer, ArchiveSegment> segments = rooms.get(room);
+        if (segments == null || segments.isEmpty()) {
+            return null;
+        }
+        return segments.lastEntry().getValue().getLastSeq();
+    }
+
+    /**
+     * Returns up to {@code limit} archived messages of the room below {@code beforeSeq}, oldest first.
+     */
+    public List<ChatMessage> getRoomMessagesBefore(String room, int beforeSeq, int limit) {
+        List<ChatMessage> result = new ArrayList<>();
+        NavigableMap<Integer, ArchiveSegment> segments = rooms.get(room);
+        if (segments == null) {
+            return result;
+        }
+        int below = beforeSeq;
+        for (ArchiveSegment segment : segments.headMap(beforeSeq, false).descendingMap().values()) {
+            List<ChatMessage> messages = readCached(segment);
+            for (int i = messages.size() - 1; i >= 0 && result.size() < limit; i--) {
+                ChatMessage chatMessage = messages.get(i);
+                if (chatMessage.getRoomSeq() < below) {
+                    result.add(chatMessage);
+                    below = chatMessage.getRoomSeq();
+                }
+            }
+            if (result.size() == limit) {
+                break;
+            }
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Returns up to {@code limit} archived messages of the room above {@code afterSeq}, oldest first.
+     */
+    public List<ChatMessage> getRoomMessagesAfter(String room, int afterSeq, int limit) {
+        List<ChatMessage> result = new ArrayList<>();
+        NavigableMap<Integer, ArchiveSegment> segments = rooms.get(room);
+        if (segments == null || segments.isEmpty() || segments.lastEntry().getValue().getLastSeq() <= afterSeq) {
+            return result;
+        }
+        Integer from = segments.floorKey(afterSeq + 1);
+        int above = afterSeq;
+        for (ArchiveSegment segment : segments.tailMap(from != null ? from : segments.firstKey(), true).values()) {
+            for (ChatMessage chatMessage : readCached(segment)) {
+                if (result.size() == limit) {
+                    return result;
+                }
+                if (chatMessage.getRoomSeq() > above) {
+                    result.add(chatMessage);
+                    above = chatMessage.getRoomSeq();
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The room's whole archived history, oldest first, decoded one segment at a time as it is iterated.
+     */
+    public Iterable<ChatMessage> streamRoomMessages(String room) {
+        NavigableMap<Integer, ArchiveSegment> segments = rooms.get(room);
+        if (segments == null) {
+            return Collections.emptyList();
+        }
+        List<ArchiveSegment> snapshot = new ArrayList<>(segments.values());
+        return () -> {
+            int[] above = {Integer.MIN_VALUE};
+            return snapshot.stream()
+                    .flatMap(segment -> read(segment).stream())
+                    .filter(chatMessage -> {
+                        if (chatMessage.getRoomSeq() <= above[0]) {
+                            return false;
+                        }
+                        above[0] = chatMessage.getRoomSeq();
+                        return true;
+                    })
+                    .iterator();
+        };
+    }
+
+    /**
+     * Returns the archived messages among {@code ids}, newest first like {@code MessageMapper.getMessagesByIds}.
+     */
+    public List<ChatMessage> getMessagesByIds(Collection<Integer> ids) {
+        Map<Integer, ChatMessage> found = new HashMap<>();
+        for (NavigableMap<Integer, ArchiveSegment> segments : rooms.values()) {
+            for (ArchiveSegment segment : segments.values()) {
+                if (segment.containsAnyId(ids)) {
+                    for (ChatMessage chatMessage : readCached(segment)) {
+                        if (ids.contains(chatMessage.getMessageId())) {
+                            found.put(chatMessage.getMessageId(), chatMessage);
+                        }
+                    }
+                }
+            }
+        }
+        List<ChatMessage> result = new ArrayList<>(found.values());
+        result.sort(Comparator.comparing(ChatMessage::getMessageId).reversed());
+        return result;
+    }
+
+    /**
+     * Every archived message, room by room and oldest first within a room, decoded as it is iterated.
+     */
+    public Iterable<ChatMessage> streamAllMessages() {
+        List<String> snapshot = new ArrayList<>(rooms.keySet());
+        return () -> snapshot.stream()
+                .flatMap(room -> StreamSupport.stream(streamRoomMessages(room).spliterator(), false))
+                .iterator();
+    }
+
+    /**
+     * Stores messages of one room, sorted by sequence number and all newer than the room's archived ones, as a
+     * new segment. Only called by the archiver thread.
+     */
+    void append(String room, List<ChatMessage> messages) throws IOException {
+        Path roomDirectory = directory.resolve(directoryName(room));
+        Files.createDirectories(roomDirectory);
+        ArchiveSegment segment = ArchiveSegment.write(roomDirectory, room, messages);
+        rooms.computeIfAbsent(room, name -> new ConcurrentSkipListMap<>()).put(segment.getFirstSeq(), segment);
+    }
+
+    /**
+     * Merges adjacent small segments of the room, so a room archived a little at a time does not end up as
+     * thousands of tiny files. A segment is small below a {@value #MERGE_FAN_IN}th of
+     * {@code chat.retention.archive.segment-messages}, and only runs of at least {@value #MERGE_FAN_IN} of them
+     * are merged; segments that came out big enough are never rewritten, which bounds how often a message is
+     * copied. Only called by the archiver thread.
+     */
+    void compact(String room) throws IOException {
+        NavigableMap<Integer, ArchiveSegment> segments = rooms.get(room);
+        if (segments == null) {
+            return;
+        }
+        int smallMessages = segmentMessages / MERGE_FAN_IN;
+        List<ArchiveSegment> run = new ArrayList<>();
+        int runMessages = 0;
+        for (ArchiveSegment segment : new ArrayList<>(segments.values())) {
+            boolean small = segment.getMessageCount() < smallMessages;
+            if (!small || runMessages + segment.getMessageCount() > segmentMessages) {
+                merge(segments, run);
+                run.clear();
+                runMessages = 0;
+            }
+            if (small) {
+                run.add(segment);
+                runMessages += segment.getMessageCount();
+            }
+        }
+        merge(segments, run);
+    }
+
+    private void merge(NavigableMap<Integer, ArchiveSegment> segments, List<ArchiveSegment> run) throws IOException {
+        if (run.size() < MERGE_FAN_IN) {
+            return;
+        }
+        List<ChatMessage> messages = new ArrayList<>();
+        for (ArchiveSegment segment : run) {
+            messages.addAll(segment.read());
+        }
+        ArchiveSegment first = run.get(0);
+        ArchiveSegment merged = ArchiveSegment.write(first.getPath().getParent(), first.getRoom(), messages);
+        // the merged segment replaces the first one before the others leave, so no message is ever missing
+        segments.put(merged.getFirstSeq(), merged);
+        for (ArchiveSegment segment : run) {
+            if (segment != first) {
+                segments.remove(segment.getFirstSeq(), segment);
+            }
+            decoded.remove(segment);
+            segment.delete();
+        }
+    }
+
+    /**
+     * Indexes one room directory. Temporary files of an interrupted write are removed, as are segments that a
+     * merge already covers but had not deleted yet.
+     */
+    private int openRoom(Path roomDirectory) throws IOException {
+        List<ArchiveSegment> found = new ArrayList<>();
+        try (Stream<Path> listing = Files.list(roomDirectory)) {
+            for (Path path : listing.collect(Collectors.toList())) {
+                String fileName = path.getFileName().toString();
+                if (fileName.endsWith(ArchiveSegment.TEMP_SUFFIX)) {
+                    Files.delete(path);
+                } else if (fileName.endsWith(ArchiveSegment.SUFFIX)) {
+                    found.add(ArchiveSegment.open(path));
+                }
+            }
+        }
+        found.sort(Comparator.comparingInt(ArchiveSegment::getFirstSeq)
+                .thenComparing(Comparator.comparingInt(ArchiveSegment::getLastSeq).reversed()));
+
+        int lastSeq = Integer.MIN_VALUE;
+        int opened = 0;
+        for (ArchiveSegment segment : found) {
+            if (segment.getFirstSeq() <= lastSeq) {
+                segment.delete();
+                continue;
+            }
+            rooms.computeIfAbsent(segment.getRoom(), name -> new ConcurrentSkipListMap<>())
+                    .put(segment.getFirstSeq(), segment);
+            lastSeq = segment.getLastSeq();
+            opened++;
+        }
+        return opened;
+    }
+
+    private List<ChatMessage> readCached(ArchiveSegment segment) {
+        List<ChatMessage> messages = decoded.get(segment);
+        if (messages == null) {
+            messages = Collections.unmodifiableList(read(segment));
+            decoded.put(segment, messages);
+        }
+        return messages;
+    }
+
+    private static List<ChatMessage> read(ArchiveSegment segment) {
+        try {
+            return segment.read();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // room names from the chat form are safe as they are; anything else, e.g. from an import, is hex encoded
+    private static String directoryName(String room) {
+        if (PLAIN_ROOM.matcher(room).matches()) {
+            return room;
+        }
+        StringBuilder hex = new StringBuilder("~");
+        for (byte b : room.getBytes(StandardCharsets.UTF_8)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
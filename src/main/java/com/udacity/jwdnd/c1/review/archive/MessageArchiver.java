@@ -0,0 +1,194 @@
+package com.udacity.jwdnd.c1.review.archive;
+
+import com.udacity.jwdnd.c1.review.mapper.MessageArchiveMapper;
+import com.udacity.jwdnd.c1.review.model.ChatMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Moves messages that left the hot window from MESSAGES into the {@link MessageArchive}. A message is cold once
+ * it is older than {@code chat.retention.hot-max-age-days} or no longer among the newest
+ * {@code chat.retention.hot-messages}; either limit can be 0 to turn it off. Messages from before creation
+ * times were recorded count as old.
+ * <p>
+ * Runs every {@code interval-ms} on its own thread and works oldest first, one batch at a time: the batch is
+ * written to archive segments, then deleted in a short transaction of its own, so the hot table is never
+ * locked for long, and batches are paced to {@code max-messages-per-second}. Rows left behind by a crash
+ * between the two steps are already archived; the next run just deletes them. A batch waits while anyone holds
+ * the archive's move lock for reading.
+ * <p>
+ * Not created with {@code chat.storage.backend=journal}: the journal has no deletes, and its segments are
+ * already the cold storage.
+ */
+@Component
+@ConditionalOnExpression("${chat.retention.enabled:false} and '${chat.storage.backend:h2}' != 'journal'")
+public class MessageArchiver {
+    private Logger logger = LoggerFactory.getLogger(MessageArchiver.class);
+
+    private MessageArchiveMapper messageArchiveMapper;
+    private MessageArchive messageArchive;
+    private TransactionTemplate transactionTemplate;
+    private ScheduledExecutorService scheduler;
+    private Duration hotMaxAge;
+    private int hotMessages;
+    private long intervalMillis;
+    private int batchSize;
+    private int maxMessagesPerSecond;
+
+    public MessageArchiver(MessageArchiveMapper messageArchiveMapper, MessageArchive messageArchive,
+                           PlatformTransactionManager transactionManager,
+                           @Value("${chat.retention.hot-max-age-days:30}") int hotMaxAgeDays,
+                           @Value("${chat.retention.hot-messages:1000000}") int hotMessages,
+                           @Value("${chat.retention.interval-ms:60000}") long intervalMillis,
+                           @Value("${chat.retention.batch-size:1000}") int batchSize,
+                           @Value("${chat.retention.max-messages-per-second:5000}") int maxMessagesPerSecond) {
+        this.messageArchiveMapper = messageArchiveMapper;
+        this.messageArchive = messageArchive;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.hotMaxAge = Duration.ofDays(hotMaxAgeDays);
+        this.hotMessages = hotMessages;
+        this.intervalMillis = intervalMillis;
+        this.batchSize = batchSize;
+        this.maxMessagesPerSecond = maxMessagesPerSecond;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                archive();
+            } catch (RuntimeException | IOException e) {
+                logger.error("Archiving messages failed, retrying in " + intervalMillis + " ms", e);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        logger.info("Archiving messages older than " + hotMaxAge.toDays() + " days or beyond the newest "
+                + hotMessages + " to the message archive every " + intervalMillis + " ms");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Moves everything that is cold right now. Returns the number of messages moved.
+     */
+    public synchronized int archive() throws IOException {
+        long start = System.nanoTime();
+        Integer oldestHotId = hotMessages > 0 ? messageArchiveMapper.getMessageIdFromNewest(hotMessages - 1) : null;
+        Instant hotSince = hotMaxAge.isZero() ? null : Instant.now().minus(hotMaxAge);
+        if (oldestHotId == null && hotSince == null) {
+            return 0;
+        }
+
+        int moved = 0;
+        List<String> touchedRooms = new ArrayList<>();
+        while (!Thread.currentThread().isInterrupted()) {
+            List<ChatMessage> batch = messageArchiveMapper.getOldestMessages(batchSize);
+            List<ChatMessage> cold = new ArrayList<>(batch.size());
+            for (ChatMessage chatMessage : batch) {
+                if (!isCold(chatMessage, oldestHotId, hotSince)) {
+                    break;
+                }
+                cold.add(chatMessage);
+            }
+            if (cold.isEmpty()) {
+                break;
+            }
+
+            moveToArchive(cold, touchedRooms);
+            moved += cold.size();
+            if (cold.size() < batchSize) {
+                break;
+            }
+            pace(cold.size());
+        }
+
+        for (String room : touchedRooms) {
+            messageArchive.compact(room);
+        }
+        if (moved > 0) {
+            logger.info("Archived " + moved + " messages in " + (System.nanoTime() - start) / 1_000_000 + " ms, "
+                    + messageArchive.getSegmentCount() + " archive segment(s)");
+        }
+        return moved;
+    }
+
+    private static boolean isCold(ChatMessage chatMessage, Integer oldestHotId, Instant hotSince) {
+        if (oldestHotId != null && chatMessage.getMessageId() < oldestHotId) {
+            return true;
+        }
+        return hotSince != null
+                && (chatMessage.getCreatedAt() == null || chatMessage.getCreatedAt().isBefore(hotSince));
+    }
+
+    private void moveToArchive(List<ChatMessage> cold, List<String> touchedRooms) throws IOException {
+        Lock move = messageArchive.getMoveLock().writeLock();
+        move.lock();
+        try {
+            moveLocked(cold, touchedRooms);
+        } finally {
+            move.unlock();
+        }
+    }
+
+    private void moveLocked(List<ChatMessage> cold, List<String> touchedRooms) throws IOException {
+        Map<String, List<ChatMessage>> byRoom = new LinkedHashMap<>();
+        List<Integer> ids = new ArrayList<>(cold.size());
+        for (ChatMessage chatMessage : cold) {
+            byRoom.computeIfAbsent(chatMessage.getRoom(), room -> new ArrayList<>()).add(chatMessage);
+            ids.add(chatMessage.getMessageId());
+        }
+        for (Map.Entry<String, List<ChatMessage>> entry : byRoom.entrySet()) {
+            String room = entry.getKey();
+            Integer archivedSeq = messageArchive.getLastRoomSeq(room);
+            List<ChatMessage> messages = entry.getValue();
+            messages.sort(Comparator.comparingInt(ChatMessage::getRoomSeq));
+            // rows that a previous run archived but did not get to delete
+            messages.removeIf(chatMessage -> archivedSeq != null && chatMessage.getRoomSeq() <= archivedSeq);
+            if (!messages.isEmpty()) {
+                messageArchive.append(room, messages);
+                if (!touchedRooms.contains(room)) {
+                    touchedRooms.add(room);
+                }
+            }
+        }
+        transactionTemplate.executeWithoutResult(status -> messageArchiveMapper.deleteMessages(ids));
+    }
+
+    private void pace(int messages) {
+        if (maxMessagesPerSecond <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(messages * 1000L / maxMessagesPerSecond);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
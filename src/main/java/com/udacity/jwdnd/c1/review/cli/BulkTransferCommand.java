@@ -0,0 +1,79 @@
+package com.udacity.jwdnd.c1.review.cli;
+
+import com.udacity.jwdnd.c1.review.service.BulkTransferService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Runs a bulk transfer instead of serving requests, then exits:
+ * <pre>
+ * java -jar review.jar --spring.main.web-application-type=none --export=backup.ndjson.gz
+ * java -jar review.jar --spring.main.web-application-type=none --import=backup.ndjson.gz
+ * </pre>
+ * Exports to a file ending in {@code .gz} are gzipped; imports detect gzip by themselves.
+ */
+@Component
+public class BulkTransferCommand implements ApplicationRunner {
+    private Logger logger = LoggerFactory.getLogger(BulkTransferCommand.class);
+
+    private BulkTransferService bulkTransferService;
+    private ConfigurableApplicationContext context;
+
+    // runners are created on every startup; the service and everything behind it only when a transfer is asked for
+    public BulkTransferCommand(@Lazy BulkTransferService bulkTransferService, ConfigurableApplicationContext context) {
+        this.bulkTransferService = bulkTransferService;
+        this.context = context;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        List<String> exports = args.getOptionValues("export");
+        List<String> imports = args.getOptionValues("import");
+        if (exports == null && imports == null) {
+            return;
+        }
+
+        if (imports != null) {
+            for (String file : imports) {
+                try (InputStream in = Files.newInputStream(Paths.get(file))) {
+                    bulkTransferService.importFrom(in);
+                }
+            }
+        }
+        if (exports != null) {
+            for (String file : exports) {
+                export(Paths.get(file));
+            }
+        }
+        logger.info("Bulk transfer finished, shutting down");
+        System.exit(SpringApplication.exit(context, () -> 0));
+    }
+
+    private void export(Path file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024)) {
+            if (file.getFileName().toString().endsWith(".gz")) {
+                try (GZIPOutputStream gzipOut = new GZIPOutputStream(out, 64 * 1024)) {
+                    bulkTransferService.export(gzipOut);
+                }
+            } else {
+                bulkTransferService.export(out);
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.udacity.jwdnd.c1.review.config;
+
+import com.udacity.jwdnd.c1.review.archive.MessageArchive;
+import com.udacity.jwdnd.c1.review.service.BatchMessageWriter;
+import com.udacity.jwdnd.c1.review.service.BlockingWorkExecutor;
+import com.udacity.jwdnd.c1.review.service.HashService;
+import com.udacity.jwdnd.c1.review.service.IdempotencyKeyStore;
+import com.udacity.jwdnd.c1.review.service.MessageBroadcaster;
+import com.udacity.jwdnd.c1.review.service.MessageService;
+import com.udacity.jwdnd.c1.review.service.RateLimiter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the counters the chat services already keep as gauges and function meters, so reading them
+ * costs nothing on the request path. JDBC pool gauges (hikaricp.*) come from the Actuator auto-configuration.
+ */
+@Component
+public class ChatMetrics {
+    private MeterRegistry meterRegistry;
+    private HashService hashService;
+    private MessageService messageService;
+    private MessageBroadcaster messageBroadcaster;
+    private BatchMessageWriter batchMessageWriter;
+    private RateLimiter rateLimiter;
+    private IdempotencyKeyStore idempotencyKeyStore;
+    private MessageArchive messageArchive;
+    private BlockingWorkExecutor blockingWork;
+
+    public ChatMetrics(MeterRegistry meterRegistry, HashService hashService, MessageService messageService,
+                       MessageBroadcaster messageBroadcaster, BatchMessageWriter batchMessageWriter,
+                       RateLimiter rateLimiter, IdempotencyKeyStore idempotencyKeyStore,
+                       MessageArchive messageArchive, BlockingWorkExecutor blockingWork) {
+        this.meterRegistry = meterRegistry;
+        this.hashService = hashService;
+        this.messageService = messageService;
+        this.messageBroadcaster = messageBroadcaster;
+        this.batchMessageWriter = batchMessageWriter;
+        this.rateLimiter = rateLimiter;
+        this.idempotencyKeyStore = idempotencyKeyStore;
+        this.messageArchive = messageArchive;
+        this.blockingWork = blockingWork;
+    }
+
+    @PostConstruct
+    public void bindMetrics() {
+        Gauge.builder("chat.hash.queue.depth", hashService, HashService::getQueueDepth)
+                .register(meterRegistry);
+        Gauge.builder("chat.hash.active", hashService, HashService::getActiveHashes)
+                .register(meterRegistry);
+        FunctionTimer.builder("chat.hash", hashService, HashService::getCompletedHashes,
+                HashService::getTotalHashNanos, TimeUnit.NANOSECONDS)
+                .register(meterRegistry);
+        FunctionCounter.builder("chat.hash.rejected", hashService, HashService::getRejectedHashes)
+                .register(meterRegistry);
+
+        FunctionCounter.builder("chat.recent.buffer.reads", messageService, MessageService::getRecentBufferHits)
+                .tag("result", "hit")
+                .register(meterRegistry);
+        FunctionCounter.builder("chat.recent.buffer.reads", messageService, MessageService::getRecentBufferMisses)
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("chat.rooms.active", messageService, MessageService::getActiveRoomCount)
+                .register(meterRegistry);
+
+        Gauge.builder("chat.push.subscribers", messageBroadcaster, MessageBroadcaster::getSubscriberCount)
+                .register(meterRegistry);
+        Gauge.builder("chat.write.behind.queue.depth", batchMessageWriter, BatchMessageWriter::getQueueDepth)
+                .register(meterRegistry);
+        Gauge.builder("chat.rate.limit.tracked.users", rateLimiter, RateLimiter::getTrackedUsers)
+                .register(meterRegistry);
+        Gauge.builder("chat.idempotency.tracked.keys", idempotencyKeyStore, IdempotencyKeyStore::getTrackedKeys)
+                .register(meterRegistry);
+        Gauge.builder("chat.archive.segments", messageArchive, MessageArchive::getSegmentCount)
+                .register(meterRegistry);
+        Gauge.builder("chat.archive.messages", messageArchive, MessageArchive::getMessageCount)
+                .register(meterRegistry);
+
+        Gauge.builder("chat.web.async.queue.depth", blockingWork, BlockingWorkExecutor::getQueueDepth)
+                .register(meterRegistry);
+        Gauge.builder("chat.web.async.active", blockingWork, BlockingWorkExecutor::getActiveTasks)
+                .register(meterRegistry);
+        FunctionCounter.builder("chat.web.async.rejected", blockingWork, BlockingWorkExecutor::getRejectedTasks)
+                .register(meterRegistry);
+    }
+}
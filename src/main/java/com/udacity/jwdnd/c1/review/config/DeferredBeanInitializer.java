@@ -0,0 +1,62 @@
+package com.udacity.jwdnd.c1.review.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * With {@code spring.main.lazy-initialization} only the beans needed to serve a login are created before the
+ * application reports ready. When {@code chat.startup.background-init} is set, this creates all the others on
+ * a background thread right after that: metrics, the retention job, the event bus poller and the in-memory
+ * indexes then start within seconds instead of on the first request that happens to need them.
+ */
+@Component
+public class DeferredBeanInitializer implements ApplicationListener<ApplicationReadyEvent> {
+    private Logger logger = LoggerFactory.getLogger(DeferredBeanInitializer.class);
+
+    private boolean enabled;
+
+    public DeferredBeanInitializer(@Value("${chat.startup.background-init:false}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        if (!enabled) {
+            return;
+        }
+        ConfigurableListableBeanFactory beanFactory = event.getApplicationContext().getBeanFactory();
+        Thread initializer = new Thread(() -> createDeferredBeans(beanFactory), "deferred-bean-init");
+        initializer.setDaemon(true);
+        initializer.start();
+    }
+
+    private void createDeferredBeans(ConfigurableListableBeanFactory beanFactory) {
+        long start = System.nanoTime();
+        int created = 0;
+        for (String beanName : beanFactory.getBeanDefinitionNames()) {
+            BeanDefinition definition = beanFactory.getBeanDefinition(beanName);
+            if (definition.isAbstract() || !definition.isSingleton() || !definition.isLazyInit()
+                    || beanFactory.containsSingleton(beanName)) {
+                continue;
+            }
+            try {
+                beanFactory.getBean(beanName);
+                created++;
+            } catch (BeansException e) {
+                // the same failure surfaces again on the request that needs the bean
+                logger.warn("Creating deferred bean " + beanName + " failed: " + e.getMessage());
+            }
+        }
+        logger.info("Created " + created + " deferred beans in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+    }
+}
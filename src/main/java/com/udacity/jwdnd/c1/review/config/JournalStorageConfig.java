@@ -0,0 +1,35 @@
+package com.udacity.jwdnd.c1.review.config;
+
+import com.udacity.jwdnd.c1.review.journal.JournalMessageMapper;
+import com.udacity.jwdnd.c1.review.journal.MessageJournal;
+import com.udacity.jwdnd.c1.review.mapper.MessageMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * With {@code chat.storage.backend=journal} messages live in a memory-mapped journal instead of the MESSAGES
+ * table. The journal mapper takes precedence over the MyBatis one wherever a {@link MessageMapper} is injected.
+ */
+@Configuration
+@ConditionalOnProperty(name = "chat.storage.backend", havingValue = "journal")
+public class JournalStorageConfig {
+    @Bean(destroyMethod = "close")
+    public MessageJournal messageJournal(@Value("${chat.storage.journal.directory:data/journal}") String directory,
+                                         @Value("${chat.storage.journal.segment-size-mb:64}") int segmentSizeMb,
+                                         @Value("${chat.storage.journal.fsync-each-append:false}") boolean fsyncEachAppend)
+            throws IOException {
+        return new MessageJournal(Paths.get(directory), segmentSizeMb * 1024 * 1024, fsyncEachAppend);
+    }
+
+    @Bean
+    @Primary
+    public MessageMapper journalMessageMapper(MessageJournal messageJournal) {
+        return new JournalMessageMapper(messageJournal);
+    }
+}
@@ -1,24 +1,59 @@
 package com.udacity.jwdnd.c1.review.config;
 
+import com.udacity.jwdnd.c1.review.service.AuthTokenService;
 import com.udacity.jwdnd.c1.review.service.AuthenticationService;
-import com.udacity.jwdnd.c1.review.service.AuthenticationServiceGpt;
+import com.udacity.jwdnd.c1.review.service.BlockingWorkExecutor;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
+import org.springframework.http.HttpHeaders;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.authentication.LoginUrlAuthenticationEntryPoint;
+import org.springframework.security.web.authentication.SimpleUrlAuthenticationFailureHandler;
+import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.authentication.session.NullAuthenticatedSessionStrategy;
+import org.springframework.security.web.csrf.CookieCsrfTokenRepository;
+import org.springframework.security.web.csrf.CsrfAuthenticationStrategy;
+import org.springframework.security.web.csrf.CsrfTokenRepository;
+import org.springframework.security.web.savedrequest.NullRequestCache;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Form login checks the password once through {@link AuthenticationService} and answers with a signed token
+ * cookie; every later request is authenticated from that cookie by {@link TokenAuthenticationFilter}. Nothing
+ * is kept in the HTTP session, so any node can serve any request.
+ * <p>
+ * Without a session every request authenticated from the token cookie would look like a fresh login to the
+ * session management and CSRF filters, which would issue a new CSRF token each time and fail the form the
+ * page was rendered with. Neither reacts to authentication here; the CSRF token is only replaced on login.
+ * <p>
+ * With {@code chat.web.async.enabled} the login form is answered by {@code LoginController} instead of the
+ * form login filter, so checking the password does not hold a servlet thread.
+ */
 @Configuration
 @EnableWebSecurity
 public class SecurityConfig extends WebSecurityConfigurerAdapter {
     private AuthenticationService authenticationService;
-//    private AuthenticationServiceGpt authenticationServiceGpt;
+    private AuthTokenService authTokenService;
+    private BlockingWorkExecutor blockingWork;
 
-    public SecurityConfig(AuthenticationService authenticationService) {
+    public SecurityConfig(AuthenticationService authenticationService, AuthTokenService authTokenService,
+                          BlockingWorkExecutor blockingWork) {
         this.authenticationService = authenticationService;
-//        this.authenticationServiceGpt = authenticationServiceGpt;
+        this.authTokenService = authTokenService;
+        this.blockingWork = blockingWork;
+    }
+
+    @Bean
+    public CsrfTokenRepository csrfTokenRepository() {
+        return new CookieCsrfTokenRepository();
     }
 
 //    @Bean
@@ -34,19 +69,52 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
     @Override
     protected void configure(HttpSecurity http) throws Exception {
         http.authorizeRequests()
-                .antMatchers("/signup", "/css/**", "/js/**").permitAll()
+                .requestMatchers(EndpointRequest.to("health", "prometheus")).permitAll()
+                .antMatchers("/login", "/signup", "/css/**", "/js/**").permitAll()
+                .antMatchers("/admin/**").access("@bulkTransferService.isAdmin(authentication.name)")
                 .anyRequest().authenticated();
 
-        http.formLogin()
-                .loginPage("/login")
-                .permitAll();
+        if (blockingWork.isAsync()) {
+            http.exceptionHandling()
+                    .authenticationEntryPoint(new LoginUrlAuthenticationEntryPoint("/login"));
+        } else {
+            SimpleUrlAuthenticationFailureHandler loginFailed =
+                    new SimpleUrlAuthenticationFailureHandler("/login?error");
+            loginFailed.setAllowSessionCreation(false);
+            http.formLogin()
+                    .loginPage("/login")
+                    .successHandler(this::loginSucceeded)
+                    .failureHandler(loginFailed)
+                    .permitAll();
+        }
 
-        http.formLogin()
-                .defaultSuccessUrl("/chat", true)
-                .and()
-            .logout()
+        http.logout()
                 .logoutUrl("/logout")
+                .deleteCookies(AuthTokenService.COOKIE_NAME)
                 .logoutSuccessUrl("/login/?logout")
                 .permitAll();
+
+        http.sessionManagement()
+                .sessionCreationPolicy(SessionCreationPolicy.STATELESS)
+                .sessionAuthenticationStrategy(new NullAuthenticatedSessionStrategy())
+                .and()
+            .requestCache()
+                .requestCache(new NullRequestCache())
+                .and()
+            .csrf()
+                .csrfTokenRepository(csrfTokenRepository())
+                .sessionAuthenticationStrategy(new NullAuthenticatedSessionStrategy())
+                .and()
+            .addFilterBefore(new TokenAuthenticationFilter(authTokenService),
+                    UsernamePasswordAuthenticationFilter.class);
+    }
+
+    private void loginSucceeded(HttpServletRequest request, HttpServletResponse response,
+                                Authentication authentication) throws IOException {
+        new CsrfAuthenticationStrategy(csrfTokenRepository()).onAuthentication(authentication, request, response);
+        String token = authTokenService.issue(authentication.getName());
+        response.addHeader(HttpHeaders.SET_COOKIE,
+                authTokenService.createCookie(token, request.isSecure()).toString());
+        response.sendRedirect(request.getContextPath() + "/chat");
     }
 }
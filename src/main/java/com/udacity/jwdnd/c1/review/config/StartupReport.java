@@ -0,0 +1,222 @@
+package com.udacity.jwdnd.c1.review.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.InstantiationAwareBeanPostProcessor;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationEnvironmentPreparedEvent;
+import org.springframework.boot.context.event.ApplicationPreparedEvent;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.boot.context.event.ApplicationStartingEvent;
+import org.springframework.boot.context.event.SpringApplicationEvent;
+import org.springframework.boot.web.context.WebServerInitializedEvent;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.SmartApplicationListener;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.util.ClassUtils;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the phases of startup and every bean created on the way, and logs the breakdown once the application
+ * is ready if {@code chat.startup.report.enabled} is set. Registered in META-INF/spring.factories, so it sees
+ * the events from before the context exists.
+ * <p>
+ * A bean is timed from instantiation to the end of its initialization. Its own time leaves out the beans it
+ * created meanwhile, i.e. its dependencies, so the top of the list is where startup actually goes.
+ * <p>
+ * {@code chat.startup.exit-on-ready} exits right after the report, for the class-data-sharing training run of
+ * the fast-startup Maven profile.
+ */
+public class StartupReport implements SmartApplicationListener {
+    private Logger logger = LoggerFactory.getLogger(StartupReport.class);
+
+    private long jvmMillis;
+    private long startNanos;
+    private long lastPhaseNanos;
+    private Map<String, Long> phaseNanos = new LinkedHashMap<>();
+    private boolean enabled;
+    private boolean exitOnReady;
+    private int topBeans;
+    private ConfigurableApplicationContext context;
+    private BeanTimer beanTimer;
+
+    // leaves out the events published per request
+    @Override
+    public boolean supportsEventType(Class<? extends ApplicationEvent> eventType) {
+        return SpringApplicationEvent.class.isAssignableFrom(eventType)
+                || ContextRefreshedEvent.class.isAssignableFrom(eventType)
+                || WebServerInitializedEvent.class.isAssignableFrom(eventType);
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationEvent event) {
+        if (event instanceof ApplicationStartingEvent) {
+            jvmMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+            startNanos = System.nanoTime();
+            lastPhaseNanos = startNanos;
+        } else if (event instanceof ApplicationEnvironmentPreparedEvent) {
+            ConfigurableEnvironment environment = ((ApplicationEnvironmentPreparedEvent) event).getEnvironment();
+            enabled = environment.getProperty("chat.startup.report.enabled", Boolean.class, false);
+            exitOnReady = environment.getProperty("chat.startup.exit-on-ready", Boolean.class, false);
+            topBeans = environment.getProperty("chat.startup.report.top-beans", Integer.class, 20);
+            phaseEnded("environment");
+        } else if (event instanceof ApplicationPreparedEvent) {
+            context = ((ApplicationPreparedEvent) event).getApplicationContext();
+            if (enabled) {
+                beanTimer = new BeanTimer();
+                context.getBeanFactory().addBeanPostProcessor(beanTimer);
+            }
+            phaseEnded("context preparation");
+        } else if (event instanceof ContextRefreshedEvent && event.getSource() == context) {
+            // the management server's child context publishes its own events to ours
+            phaseEnded("bean creation");
+        } else if (event instanceof WebServerInitializedEvent
+                && ((WebServerInitializedEvent) event).getApplicationContext() == context) {
+            phaseEnded("web server start");
+        } else if (event instanceof ApplicationStartedEvent) {
+            phaseEnded("after refresh");
+        } else if (event instanceof ApplicationReadyEvent) {
+            phaseEnded("runners");
+            ready();
+        }
+    }
+
+    private void phaseEnded(String phase) {
+        long now = System.nanoTime();
+        phaseNanos.put(phase, now - lastPhaseNanos);
+        lastPhaseNanos = now;
+    }
+
+    private void ready() {
+        if (enabled) {
+            beanTimer.stop();
+            logger.info(report());
+        }
+        if (exitOnReady) {
+            logger.info("Exiting after startup as chat.startup.exit-on-ready is set");
+            System.exit(SpringApplication.exit(context));
+        }
+    }
+
+    private String report() {
+        StringBuilder report = new StringBuilder();
+        report.append("Started in ").append(millis(lastPhaseNanos - startNanos)).append(" ms after ")
+                .append(jvmMillis).append(" ms of JVM startup\n");
+        for (Map.Entry<String, Long> phase : phaseNanos.entrySet()) {
+            report.append(String.format("  %-20s %7d ms%n", phase.getKey(), millis(phase.getValue())));
+        }
+
+        List<BeanTiming> timings = beanTimer.getTimings();
+        long ownNanos = timings.stream().mapToLong(BeanTiming::getOwnNanos).sum();
+        timings.sort(Comparator.comparingLong(BeanTiming::getOwnNanos).reversed());
+        report.append(timings.size()).append(" beans created in ").append(millis(ownNanos))
+                .append(" ms, slowest first (own time, with dependencies):\n");
+        for (BeanTiming timing : timings.subList(0, Math.min(topBeans, timings.size()))) {
+            report.append(String.format("  %7d ms %7d ms  %s (%s)%n", millis(timing.getOwnNanos()),
+                    millis(timing.getTotalNanos()), timing.getBeanName(), timing.getBeanType()));
+        }
+        return report.toString();
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /**
+     * Keeps a stack of the beans being created, since creating one creates its dependencies first.
+     */
+    private static class BeanTimer implements InstantiationAwareBeanPostProcessor {
+        private ThreadLocal<Deque<BeanCreation>> creations = ThreadLocal.withInitial(ArrayDeque::new);
+        private List<BeanTiming> timings = new ArrayList<>();
+        private volatile boolean stopped;
+
+        @Override
+        public Object postProcessBeforeInstantiation(Class<?> beanClass, String beanName) throws BeansException {
+            if (!stopped) {
+                creations.get().push(new BeanCreation(beanName, System.nanoTime()));
+            }
+            return null;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+            Deque<BeanCreation> stack = creations.get();
+            // factory bean products come through here again, without an instantiation of their own
+            if (stack.isEmpty() || !stack.peek().beanName.equals(beanName)) {
+                return bean;
+            }
+            BeanCreation creation = stack.pop();
+            long totalNanos = System.nanoTime() - creation.startNanos;
+            if (!stack.isEmpty()) {
+                stack.peek().dependencyNanos += totalNanos;
+            }
+            synchronized (this) {
+                timings.add(new BeanTiming(beanName, ClassUtils.getUserClass(bean).getSimpleName(),
+                        totalNanos - creation.dependencyNanos, totalNanos));
+            }
+            return bean;
+        }
+
+        void stop() {
+            stopped = true;
+        }
+
+        synchronized List<BeanTiming> getTimings() {
+            return new ArrayList<>(timings);
+        }
+    }
+
+    private static class BeanCreation {
+        private String beanName;
+        private long startNanos;
+        private long dependencyNanos;
+
+        BeanCreation(String beanName, long startNanos) {
+            this.beanName = beanName;
+            this.startNanos = startNanos;
+        }
+    }
+
+    private static class BeanTiming {
+        private String beanName;
+        private String beanType;
+        private long ownNanos;
+        private long totalNanos;
+
+        BeanTiming(String beanName, String beanType, long ownNanos, long totalNanos) {
+            this.beanName = beanName;
+            this.beanType = beanType;
+            this.ownNanos = ownNanos;
+            this.totalNanos = totalNanos;
+        }
+
+        String getBeanName() {
+            return beanName;
+        }
+
+        String getBeanType() {
+            return beanType;
+        }
+
+        long getOwnNanos() {
+            return ownNanos;
+        }
+
+        long getTotalNanos() {
+            return totalNanos;
+        }
+    }
+}
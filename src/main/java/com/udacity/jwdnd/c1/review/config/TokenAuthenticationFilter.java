@@ -0,0 +1,41 @@
+package com.udacity.jwdnd.c1.review.config;
+
+import com.udacity.jwdnd.c1.review.service.AuthTokenService;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.WebUtils;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Collections;
+
+/**
+ * Authenticates a request from its login token cookie. The signature check is the whole cost: no session,
+ * no database lookup and no password hash.
+ */
+public class TokenAuthenticationFilter extends OncePerRequestFilter {
+    private AuthTokenService authTokenService;
+
+    public TokenAuthenticationFilter(AuthTokenService authTokenService) {
+        this.authTokenService = authTokenService;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        Cookie cookie = WebUtils.getCookie(request, AuthTokenService.COOKIE_NAME);
+        if (cookie != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+            String userName = authTokenService.verify(cookie.getValue());
+            if (userName != null) {
+                SecurityContextHolder.getContext().setAuthentication(
+                        new UsernamePasswordAuthenticationToken(userName, null, Collections.emptyList()));
+            }
+        }
+        filterChain.doFilter(request, response);
+    }
+}
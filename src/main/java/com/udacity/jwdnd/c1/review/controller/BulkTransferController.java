@@ -0,0 +1,64 @@
+package com.udacity.jwdnd.c1.review.controller;
+
+import com.udacity.jwdnd.c1.review.model.ImportResult;
+import com.udacity.jwdnd.c1.review.service.BulkTransferService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Bulk export and import for the users listed in {@code chat.bulk.admins}, see {@link BulkTransferService}.
+ */
+@Controller
+@RequestMapping("/admin/bulk")
+public class BulkTransferController {
+    private static final String NDJSON = "application/x-ndjson";
+
+    private BulkTransferService bulkTransferService;
+
+    public BulkTransferController(BulkTransferService bulkTransferService) {
+        this.bulkTransferService = bulkTransferService;
+    }
+
+    @GetMapping("/export")
+    public void export(@RequestParam(defaultValue = "false") boolean gzip, HttpServletResponse response)
+            throws IOException {
+        String fileName = gzip ? "chat-export.ndjson.gz" : "chat-export.ndjson";
+        response.setContentType(gzip ? "application/gzip" : NDJSON);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"");
+        OutputStream out = response.getOutputStream();
+        if (gzip) {
+            try (GZIPOutputStream gzipOut = new GZIPOutputStream(out, 64 * 1024)) {
+                bulkTransferService.export(gzipOut);
+            }
+        } else {
+            bulkTransferService.export(out);
+        }
+    }
+
+    /**
+     * Takes an export as the request body; gzipped bodies are recognised by their magic number.
+     */
+    @PostMapping("/import")
+    @ResponseBody
+    public ImportResult importData(HttpServletRequest request) throws IOException {
+        return bulkTransferService.importFrom(request.getInputStream());
+    }
+
+    @ExceptionHandler(IOException.class)
+    public ResponseEntity<String> transferFailed(IOException e) {
+        return ResponseEntity.badRequest().body("Bulk transfer failed: " + e.getMessage());
+    }
+}
@@ -1,38 +1,65 @@
 package com.udacity.jwdnd.c1.review.controller;
 
-import com.udacity.jwdnd.c1.review.service.AuthenticationServiceGpt;
+import com.udacity.jwdnd.c1.review.service.AuthTokenService;
+import com.udacity.jwdnd.c1.review.service.AuthenticationService;
+import com.udacity.jwdnd.c1.review.service.BlockingWorkRejectedException;
+import com.udacity.jwdnd.c1.review.service.HashingUnavailableException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.web.csrf.CsrfAuthenticationStrategy;
+import org.springframework.security.web.csrf.CsrfTokenRepository;
 import org.springframework.stereotype.Controller;
-import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+// in blocking mode the login form posts to Spring Security's filter, which is the only place passwords are checked
 @Controller
 @RequestMapping("/login")
 public class LoginController {
-    private AuthenticationServiceGpt authenticationServiceGpt;
+    private AuthenticationService authenticationService;
+    private AuthTokenService authTokenService;
+    private CsrfAuthenticationStrategy csrfAuthenticationStrategy;
 
-    public LoginController(AuthenticationServiceGpt authenticationServiceGpt) {
-        this.authenticationServiceGpt = authenticationServiceGpt;
+    public LoginController(AuthenticationService authenticationService, AuthTokenService authTokenService,
+                           CsrfTokenRepository csrfTokenRepository) {
+        this.authenticationService = authenticationService;
+        this.authTokenService = authTokenService;
+        this.csrfAuthenticationStrategy = new CsrfAuthenticationStrategy(csrfTokenRepository);
     }
 
     @GetMapping()
     public String loginView() {
-        return "loginGpt";
+        return "login";
     }
 
+    /**
+     * The login form in async mode, where SecurityConfig leaves out the form login filter. Does what that filter
+     * does, a new CSRF token and the login token cookie on success and {@code /login?error} otherwise, without
+     * holding the servlet thread while the password is checked.
+     */
     @PostMapping()
-    public String loginSubmit(String username, String password, Model model) {
-        boolean authenticated = authenticationServiceGpt.authenticate(username, password);
-//        String loginError = null;
-
-        if (authenticated) {
-            return "chat";
-        } else {
-//            loginError = "login failed";
-            model.addAttribute("error", "login failed");
-            return "loginGpt";
-        }
-
+    public CompletableFuture<String> login(@RequestParam String username, @RequestParam String password,
+                                           HttpServletRequest request, HttpServletResponse response) {
+        return authenticationService.authenticateAsync(username, password).handle((authentication, e) -> {
+            Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+            if (cause != null && !(cause instanceof HashingUnavailableException
+                    || cause instanceof BlockingWorkRejectedException)) {
+                throw new CompletionException(cause);
+            }
+            if (authentication == null) {
+                return "redirect:/login?error";
+            }
+            csrfAuthenticationStrategy.onAuthentication(authentication, request, response);
+            String token = authTokenService.issue(authentication.getName());
+            response.addHeader(HttpHeaders.SET_COOKIE,
+                    authTokenService.createCookie(token, request.isSecure()).toString());
+            return "redirect:/chat";
+        });
     }
 }
@@ -1,18 +1,54 @@
 package com.udacity.jwdnd.c1.review.controller;
 
 import com.udacity.jwdnd.c1.review.model.ChatForm;
+import com.udacity.jwdnd.c1.review.model.ChatMessage;
+import com.udacity.jwdnd.c1.review.model.ChatStats;
+import com.udacity.jwdnd.c1.review.model.MessagePage;
 import com.udacity.jwdnd.c1.review.model.MessageType;
 import com.udacity.jwdnd.c1.review.model.User;
+import com.udacity.jwdnd.c1.review.service.BlockingWorkExecutor;
+import com.udacity.jwdnd.c1.review.service.BlockingWorkRejectedException;
+import com.udacity.jwdnd.c1.review.service.ChatStatistics;
+import com.udacity.jwdnd.c1.review.service.IdempotencyKeyStore;
+import com.udacity.jwdnd.c1.review.service.MessageBroadcaster;
 import com.udacity.jwdnd.c1.review.service.MessageService;
+import com.udacity.jwdnd.c1.review.service.RateLimitExceededException;
+import com.udacity.jwdnd.c1.review.service.RateLimiter;
 import com.udacity.jwdnd.c1.review.service.UserService;
+import io.micrometer.core.annotation.Timed;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.web.csrf.CsrfToken;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.View;
+import org.springframework.web.servlet.mvc.support.RedirectAttributes;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.thymeleaf.spring5.view.ThymeleafViewResolver;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 @Controller
 @RequestMapping("/chat")
@@ -20,33 +56,189 @@ public class MessageController {
     Logger logger = LoggerFactory.getLogger(MessageController.class);
 
     private MessageService messageService;
+    private MessageBroadcaster messageBroadcaster;
     private UserService userService;
+    private RateLimiter rateLimiter;
+    private ChatStatistics chatStatistics;
+    private IdempotencyKeyStore idempotencyKeyStore;
+    private BlockingWorkExecutor blockingWork;
+    private ThymeleafViewResolver thymeleafViewResolver;
+    private int historyChunkSize;
 
-    public MessageController(MessageService messageService, UserService userService) {
+    public MessageController(MessageService messageService, MessageBroadcaster messageBroadcaster,
+                             UserService userService, RateLimiter rateLimiter, ChatStatistics chatStatistics,
+                             IdempotencyKeyStore idempotencyKeyStore, BlockingWorkExecutor blockingWork,
+                             ThymeleafViewResolver thymeleafViewResolver,
+                             @Value("${chat.history.chunk-size:8192}") int historyChunkSize) {
         this.messageService = messageService;
+        this.messageBroadcaster = messageBroadcaster;
         this.userService = userService;
+        this.rateLimiter = rateLimiter;
+        this.chatStatistics = chatStatistics;
+        this.idempotencyKeyStore = idempotencyKeyStore;
+        this.blockingWork = blockingWork;
+        this.thymeleafViewResolver = thymeleafViewResolver;
+        this.historyChunkSize = historyChunkSize;
     }
 
+    /**
+     * The conditional check is answered from memory on the servlet thread; reading the page is handed to
+     * {@link BlockingWorkExecutor}, which in async mode frees the servlet thread until the model is ready.
+     */
     @GetMapping
-    public String getChatHomepage(ChatForm chatForm, Model model) {
+    @Timed(value = "chat.http.view", histogram = true)
+    public CompletableFuture<String> getChatHomepage(ChatForm chatForm,
+                                  @RequestParam(required = false) String room,
+                                  @RequestParam(required = false) Integer before,
+                                  @RequestParam(required = false) Integer after,
+                                  Model model, ServletWebRequest webRequest) {
 //        Object userObject = model.getAttribute("user");
 //        logger.info("userObject: " + userObject);
 //        if (userObject instanceof User) {
 //            logger.info("logged Username: " + ((User) userObject).getUserName() );
 //        }
-        model.addAttribute("chatMessages", messageService.getChatMessages());
+        room = messageService.normalizeRoom(room);
+        // revalidate on every refresh; unchanged rooms are answered with 304 before any query or rendering
+        webRequest.getResponse().setHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
+        if (webRequest.checkNotModified(chatPageEtag(room, before, after, webRequest),
+                messageService.getRoomLastModified(room))) {
+            return null;
+        }
+
+        String chatRoom = room;
+        return blockingWork.supply(() -> showChatPage(chatForm, chatRoom, before, after, model));
+    }
+
+    private String showChatPage(ChatForm chatForm, String room, Integer before, Integer after, Model model) {
+        MessagePage chatPage;
+        if (before != null) {
+            chatPage = messageService.getMessagesBefore(room, before);
+        } else if (after != null) {
+            chatPage = messageService.getMessagesAfter(room, after);
+        } else {
+            chatPage = messageService.getLatestMessages(room);
+        }
+        chatForm.setRoom(room);
+        chatForm.setIdempotencyKey(UUID.randomUUID().toString());
+        addChatPage(room, chatPage, model);
         return "chat";
     }
 
+    /**
+     * Post/Redirect/Get: the message is stored and the browser sent back to {@code GET /chat}, so refreshing
+     * the page re-reads the room instead of posting again. Resubmitting the form's idempotency key, e.g. from
+     * a retry or the back button, is absorbed by {@link IdempotencyKeyStore} before it reaches the rate limiter
+     * or the database.
+     */
     @PostMapping
-    public String addChatMessage(ChatForm chatForm, Model model) {
-        messageService.addChatMessage(getCurrentUsername(), chatForm.getMessageText(),
-                chatForm.getMessageType());
-        model.addAttribute("chatMessages", messageService.getChatMessages());
-        chatForm.setUserName("");
-        chatForm.setMessageText("");
-        chatForm.setMessageType(MessageType.SAY);
-        return "chat";
+    @Timed(value = "chat.http.post", histogram = true)
+    public CompletableFuture<String> addChatMessage(ChatForm chatForm, RedirectAttributes redirectAttributes) {
+        String room = messageService.normalizeRoom(chatForm.getRoom());
+        String userName = getCurrentUsername();
+        String content = room + '\n' + chatForm.getMessageType() + '\n' + chatForm.getMessageText();
+        redirectAttributes.addAttribute("room", room);
+        if (!idempotencyKeyStore.claim(userName, chatForm.getIdempotencyKey(), content)) {
+            return CompletableFuture.completedFuture("redirect:/chat");
+        }
+        return blockingWork.supply(() -> postChatMessage(userName, room, chatForm)).whenComplete((view, e) -> {
+            if (e instanceof BlockingWorkRejectedException) {
+                idempotencyKeyStore.release(userName, chatForm.getIdempotencyKey());
+            }
+        });
+    }
+
+    private String postChatMessage(String userName, String room, ChatForm chatForm) {
+        try {
+            rateLimiter.acquire(userName);
+            messageService.addChatMessage(userName, room, chatForm.getMessageText(), chatForm.getMessageType());
+        } catch (RuntimeException e) {
+            idempotencyKeyStore.release(userName, chatForm.getIdempotencyKey());
+            throw e;
+        }
+        return "redirect:/chat";
+    }
+
+    /**
+     * Full history of a room for audits. chat.html is rendered straight from a database cursor and flushed to
+     * the client every {@code chat.history.chunk-size} bytes, so the rows are never materialized as a list.
+     * Stays on the servlet thread in async mode too, since it writes the response while it reads.
+     */
+    @GetMapping("/history")
+    public void streamChatHistory(ChatForm chatForm, @RequestParam(required = false) String room, Model model,
+                                  HttpServletRequest request, HttpServletResponse response) throws Exception {
+        String historyRoom = messageService.normalizeRoom(room);
+        chatForm.setRoom(historyRoom);
+        View chatView = thymeleafViewResolver.resolveViewName("chat", request.getLocale());
+        response.setBufferSize(historyChunkSize);
+
+        Map<String, Object> historyModel = new HashMap<>(model.asMap());
+        historyModel.put("chatPage", new MessagePage(Collections.emptyList(), null, null));
+        historyModel.put("historyView", true);
+        historyModel.put("room", historyRoom);
+        messageService.streamChatMessages(historyRoom, chatMessages -> {
+            historyModel.put("chatMessages", chatMessages);
+            try {
+                chatView.render(historyModel, request, response);
+            } catch (Exception e) {
+                throw new IllegalStateException("Failed to stream chat history", e);
+            }
+        });
+    }
+
+    @GetMapping("/search")
+    @ResponseBody
+    @Timed(value = "chat.http.search", histogram = true)
+    public CompletableFuture<MessagePage> searchMessages(@RequestParam(defaultValue = "") String q,
+                                                         @RequestParam(required = false) String user,
+                                                         @RequestParam(required = false) Integer before) {
+        return blockingWork.supply(() -> messageService.searchMessages(q, user, before));
+    }
+
+    @GetMapping("/stats")
+    @ResponseBody
+    public ChatStats getStats(@RequestParam(required = false) String user) {
+        return chatStatistics.getStats(user != null ? user : userService.getCurrentUsername());
+    }
+
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChatMessages(@RequestHeader(value = "Last-Event-ID", required = false) Integer lastEventId,
+                                         @RequestParam(required = false) String room,
+                                         @RequestParam(defaultValue = "0") int after) {
+        String streamRoom = messageService.normalizeRoom(room);
+        // browsers send Last-Event-ID on reconnect, which wins over the sequence the page was rendered with
+        int lastSeenSeq = lastEventId != null ? lastEventId : after;
+        return messageBroadcaster.subscribe(streamRoom, lastSeenSeq,
+                seq -> messageService.getMessagesAfter(streamRoom, seq).getMessages());
+    }
+
+    @ExceptionHandler(RateLimitExceededException.class)
+    public ResponseEntity<String> rateLimitExceeded(RateLimitExceededException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(e.getMessage() + ", retry in " + e.getRetryAfterSeconds() + "s");
+    }
+
+    /**
+     * Weak ETag of a chat page: the room's version and the cursors, plus the viewer and their CSRF token since
+     * both are rendered into the page; the token only changes on login. The last-modified time is part of it so
+     * a restart with a changed template does not keep serving cached pages.
+     */
+    private String chatPageEtag(String room, Integer before, Integer after, ServletWebRequest webRequest) {
+        CsrfToken csrfToken = (CsrfToken) webRequest.getRequest().getAttribute(CsrfToken.class.getName());
+        int viewer = Objects.hash(getCurrentUsername(), csrfToken != null ? csrfToken.getToken() : null);
+        return "W/\"" + room + "-" + messageService.getRoomVersion(room) + "."
+                + Long.toString(messageService.getRoomLastModified(room), 36) + "-" + before + "-" + after + "-"
+                + Integer.toHexString(viewer) + "\"";
+    }
+
+    private void addChatPage(String room, MessagePage chatPage, Model model) {
+        List<ChatMessage> chatMessages = chatPage.getMessages();
+        model.addAttribute("room", room);
+        model.addAttribute("chatPage", chatPage);
+        model.addAttribute("chatMessages", chatMessages);
+        model.addAttribute("lastRoomSeq",
+                chatMessages.isEmpty() ? 0 : chatMessages.get(chatMessages.size() - 1).getRoomSeq());
     }
 
     @ModelAttribute("username")
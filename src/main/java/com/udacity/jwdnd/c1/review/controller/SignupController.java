@@ -1,7 +1,12 @@
 package com.udacity.jwdnd.c1.review.controller;
 
 import com.udacity.jwdnd.c1.review.model.User;
+import com.udacity.jwdnd.c1.review.service.BlockingWorkExecutor;
+import com.udacity.jwdnd.c1.review.service.BlockingWorkRejectedException;
+import com.udacity.jwdnd.c1.review.service.HashingUnavailableException;
+import com.udacity.jwdnd.c1.review.service.UserNameTakenException;
 import com.udacity.jwdnd.c1.review.service.UserService;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -9,14 +14,21 @@ import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 @Controller
 @RequestMapping("/signup")
 public class SignupController {
+    private static final String USERNAME_TAKEN = "The username already exists.";
+    private static final String SIGNUP_FAILED = "There was an error signing you up. Please try again.";
 
     private UserService userService;
+    private BlockingWorkExecutor blockingWork;
 
-    public SignupController(UserService userService) {
+    public SignupController(UserService userService, BlockingWorkExecutor blockingWork) {
         this.userService = userService;
+        this.blockingWork = blockingWork;
     }
 
     @GetMapping
@@ -26,20 +38,58 @@ public class SignupController {
     }
 
     @PostMapping
-    public String signupSubmit(@ModelAttribute User user, Model model) {
+    @Timed(value = "chat.http.signup", histogram = true)
+    public CompletableFuture<String> signupSubmit(@ModelAttribute User user, Model model) {
+        if (blockingWork.isAsync()) {
+            return signupSubmitAsync(user, model);
+        }
+
         String signupError = null;
 
         if (!userService.isUsernameAvailable(user.getUserName())) {
-            signupError = "The username already exists.";
+            signupError = USERNAME_TAKEN;
         }
 
         if (signupError == null) {
-            int rowsAdded = userService.createUser(user);
-            if (rowsAdded < 0) {
-                signupError = "There was an error signing you up. Please try again.";
+            try {
+                int rowsAdded = userService.createUser(user);
+                if (rowsAdded < 0) {
+                    signupError = SIGNUP_FAILED;
+                }
+            } catch (UserNameTakenException | HashingUnavailableException e) {
+                signupError = e.getMessage();
             }
         }
 
+        return CompletableFuture.completedFuture(showSignupResult(signupError, model));
+    }
+
+    /**
+     * The same steps chained on {@link BlockingWorkExecutor} and the hashing pool; the servlet thread is
+     * released as soon as the name lookup is queued.
+     */
+    private CompletableFuture<String> signupSubmitAsync(User user, Model model) {
+        return blockingWork.supply(() -> userService.isUsernameAvailable(user.getUserName()))
+                .thenCompose(available -> {
+                    if (!available) {
+                        throw new UserNameTakenException(USERNAME_TAKEN);
+                    }
+                    return userService.createUserAsync(user);
+                })
+                .handle((rowsAdded, e) -> {
+                    Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                    if (cause == null) {
+                        return showSignupResult(rowsAdded < 0 ? SIGNUP_FAILED : null, model);
+                    }
+                    if (cause instanceof UserNameTakenException || cause instanceof HashingUnavailableException
+                            || cause instanceof BlockingWorkRejectedException) {
+                        return showSignupResult(cause.getMessage(), model);
+                    }
+                    throw new CompletionException(cause);
+                });
+    }
+
+    private String showSignupResult(String signupError, Model model) {
         if (signupError == null) {
             model.addAttribute("signupSuccess", true);
         } else {
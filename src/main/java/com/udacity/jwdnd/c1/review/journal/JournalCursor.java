@@ -0,0 +1,92 @@
+package com.udacity.jwdnd.c1.review.journal;
+
+import com.udacity.jwdnd.c1.review.model.ChatMessage;
+import org.apache.ibatis.cursor.Cursor;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Lazily pages through the journal, holding one batch of messages at a time. {@code batchAfter} returns the
+ * batch following a key, and {@code key} gives the key of a message: the id for a full scan, the sequence
+ * number for a single room.
+ */
+class JournalCursor implements Cursor<ChatMessage> {
+    private IntFunction<List<ChatMessage>> batchAfter;
+    private ToIntFunction<ChatMessage> key;
+    private int lastKey;
+    private boolean open = true;
+    private boolean consumed;
+    private boolean iteratorRetrieved;
+    private int currentIndex = -1;
+
+    JournalCursor(IntFunction<List<ChatMessage>> batchAfter, ToIntFunction<ChatMessage> key) {
+        this.batchAfter = batchAfter;
+        this.key = key;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public boolean isConsumed() {
+        return consumed;
+    }
+
+    @Override
+    public int getCurrentIndex() {
+        return currentIndex;
+    }
+
+    @Override
+    public Iterator<ChatMessage> iterator() {
+        if (iteratorRetrieved) {
+            throw new IllegalStateException("Cannot open more than one iterator on a Cursor");
+        }
+        if (!open) {
+            throw new IllegalStateException("A Cursor that is already closed cannot be iterated");
+        }
+        iteratorRetrieved = true;
+        return new Iterator<ChatMessage>() {
+            private List<ChatMessage> batch = List.of();
+            private int position;
+
+            @Override
+            public boolean hasNext() {
+                if (position < batch.size()) {
+                    return true;
+                }
+                if (!open || consumed) {
+                    return false;
+                }
+                batch = batchAfter.apply(lastKey);
+                position = 0;
+                if (batch.isEmpty()) {
+                    consumed = true;
+                    return false;
+                }
+                lastKey = key.applyAsInt(batch.get(batch.size() - 1));
+                return true;
+            }
+
+            @Override
+            public ChatMessage next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                currentIndex++;
+                return batch.get(position++);
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        open = false;
+    }
+}
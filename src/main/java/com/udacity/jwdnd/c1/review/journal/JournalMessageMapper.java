@@ -0,0 +1,92 @@
+package com.udacity.jwdnd.c1.review.journal;
+
+import com.udacity.jwdnd.c1.review.mapper.MessageMapper;
+import com.udacity.jwdnd.c1.review.model.ChatMessage;
+import org.apache.ibatis.cursor.Cursor;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * {@link MessageMapper} backed by the memory-mapped {@link MessageJournal} instead of the MESSAGES table.
+ */
+public class JournalMessageMapper implements MessageMapper {
+    private static final int CURSOR_BATCH_SIZE = 1000;
+
+    private MessageJournal messageJournal;
+
+    public JournalMessageMapper(MessageJournal messageJournal) {
+        this.messageJournal = messageJournal;
+    }
+
+    @Override
+    public Cursor<ChatMessage> streamAllMessages() {
+        return new JournalCursor(id -> messageJournal.read(id + 1, CURSOR_BATCH_SIZE), ChatMessage::getMessageId);
+    }
+
+    @Override
+    public List<ChatMessage> getLatestMessages(int limit) {
+        return getMessagesBefore(Integer.MAX_VALUE, limit);
+    }
+
+    @Override
+    public List<ChatMessage> getMessagesBefore(int beforeId, int limit) {
+        int lastId = Math.min(beforeId - 1, messageJournal.getLastId());
+        int firstId = Math.max(messageJournal.getFirstId(), lastId - limit + 1);
+        if (lastId < firstId) {
+            return new ArrayList<>();
+        }
+        return messageJournal.read(firstId, lastId - firstId + 1);
+    }
+
+    @Override
+    public List<ChatMessage> getMessagesAfter(int afterId, int limit) {
+        return messageJournal.read(Math.max(afterId + 1, messageJournal.getFirstId()), limit);
+    }
+
+    @Override
+    public List<ChatMessage> getMessagesByIds(List<Integer> ids) {
+        List<ChatMessage> messages = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            List<ChatMessage> found = messageJournal.read(id, 1);
+            if (!found.isEmpty() && found.get(0).getMessageId().equals(id)) {
+                messages.add(found.get(0));
+            }
+        }
+        messages.sort(Comparator.comparing(ChatMessage::getMessageId).reversed());
+        return messages;
+    }
+
+    @Override
+    public Integer getLastRoomSeq(String room) {
+        return messageJournal.getLastRoomSeq(room);
+    }
+
+    @Override
+    public List<ChatMessage> getLatestRoomMessages(String room, int limit) {
+        return messageJournal.readRoomBefore(room, Integer.MAX_VALUE, limit);
+    }
+
+    @Override
+    public List<ChatMessage> getRoomMessagesBefore(String room, int beforeSeq, int limit) {
+        return messageJournal.readRoomBefore(room, beforeSeq, limit);
+    }
+
+    @Override
+    public List<ChatMessage> getRoomMessagesAfter(String room, int afterSeq, int limit) {
+        return messageJournal.readRoomAfter(room, afterSeq, limit);
+    }
+
+    @Override
+    public Cursor<ChatMessage> streamRoomMessages(String room) {
+        return new JournalCursor(seq -> messageJournal.readRoomAfter(room, seq, CURSOR_BATCH_SIZE),
+                ChatMessage::getRoomSeq);
+    }
+
+    @Override
+    public int insert(ChatMessage chatMessage) {
+        messageJournal.append(chatMessage);
+        return 1;
+    }
+}
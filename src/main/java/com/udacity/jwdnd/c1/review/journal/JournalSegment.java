@@ -0,0 +1,256 @@
+package com.udacity.jwdnd.c1.review.journal;
+
+import com.udacity.jwdnd.c1.review.model.ChatMessage;
+import com.udacity.jwdnd.c1.review.model.MessageType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * One memory-mapped file of the message journal. After a 16 byte header come length-prefixed records:
+ * {@code [int bodyLength][int crc32(body)][body]}. A zero length marks the end of the written region.
+ * Message ids inside a segment are dense, starting at the segment's base id, so the sparse index only keeps
+ * the offset of every {@value #INDEX_INTERVAL}th record. A record body starts with its version byte and
+ * carries the message id, the room and its sequence number, the message type, the creation time, the
+ * author's user id and the message text.
+ */
+class JournalSegment {
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_OVERHEAD = 8;
+    static final int INDEX_INTERVAL = 64;
+
+    private static final int MAGIC = 0x43484a31;
+    private static final int FORMAT_VERSION = 1;
+    private static final byte RECORD_VERSION = 1;
+    private static final byte NO_TYPE = -1;
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    private Path path;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int baseId;
+    private int recordCount;
+    private int writePosition;
+    private int[] indexOffsets = new int[16];
+
+    private JournalSegment(Path path, FileChannel channel, MappedByteBuffer buffer, int baseId) {
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.baseId = baseId;
+        this.writePosition = HEADER_SIZE;
+    }
+
+    static String fileName(int baseId) {
+        return String.format("%020d.seg", baseId);
+    }
+
+    static JournalSegment create(Path directory, int baseId, int size) throws IOException {
+        Path path = directory.resolve(fileName(baseId));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, FORMAT_VERSION);
+        buffer.putInt(8, baseId);
+        buffer.force();
+        return new JournalSegment(path, channel, buffer, baseId);
+    }
+
+    /**
+     * Maps an existing segment and scans it for the last intact record. Anything after a zero length, a record
+     * running past the end of the file, a checksum mismatch or an out-of-sequence id is treated as a torn
+     * write and will be overwritten by the next append.
+     */
+    static JournalSegment recover(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            channel.close();
+            throw new IOException("Not a message journal segment: " + path);
+        }
+        if (buffer.getInt(4) != FORMAT_VERSION) {
+            channel.close();
+            throw new IOException("Unsupported journal format " + buffer.getInt(4) + " in " + path);
+        }
+
+        JournalSegment segment = new JournalSegment(path, channel, buffer, buffer.getInt(8));
+        CRC32 crc = new CRC32();
+        int position = HEADER_SIZE;
+        while (position + RECORD_OVERHEAD <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + RECORD_OVERHEAD + length > buffer.capacity()) {
+                break;
+            }
+            byte[] body = new byte[length];
+            ByteBuffer view = buffer.duplicate();
+            view.position(position + RECORD_OVERHEAD);
+            view.get(body);
+            crc.reset();
+            crc.update(body);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)
+                    || ByteBuffer.wrap(body).getInt(1) != segment.baseId + segment.recordCount) {
+                break;
+            }
+            if (body[0] != RECORD_VERSION) {
+                channel.close();
+                throw new IOException("Unsupported journal record version " + body[0] + " in " + path);
+            }
+            segment.indexRecord(position);
+            position += RECORD_OVERHEAD + length;
+        }
+        segment.writePosition = position;
+        if (position + RECORD_OVERHEAD <= buffer.capacity()) {
+            buffer.putLong(position, 0L);
+        }
+        return segment;
+    }
+
+    static byte[] encode(ChatMessage chatMessage) {
+        byte[] room = chatMessage.getRoom().getBytes(StandardCharsets.UTF_8);
+        byte[] messageText = chatMessage.getMessageText().getBytes(StandardCharsets.UTF_8);
+        MessageType messageType = chatMessage.getMessageType();
+        Instant createdAt = chatMessage.getCreatedAt();
+        ByteBuffer body = ByteBuffer.allocate(1 + 4 + 2 + room.length + 4 + 1 + 8 + 4 + 4 + messageText.length);
+        body.put(RECORD_VERSION)
+                .putInt(chatMessage.getMessageId())
+                .putShort((short) room.length)
+                .put(room)
+                .putInt(chatMessage.getRoomSeq())
+                .put(messageType == null ? NO_TYPE : (byte) messageType.ordinal())
+                .putLong(createdAt == null ? NO_TIME : createdAt.toEpochMilli())
+                .putInt(chatMessage.getUserId())
+                .putInt(messageText.length)
+                .put(messageText);
+        return body.array();
+    }
+
+    boolean hasRoomFor(int bodyLength) {
+        return writePosition + RECORD_OVERHEAD + bodyLength <= buffer.capacity();
+    }
+
+    // the journal's write lock serializes appends and orders them before any read of the new write position
+    void append(byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        int position = writePosition;
+        ByteBuffer view = buffer.duplicate();
+        view.position(position + RECORD_OVERHEAD);
+        view.put(body);
+        buffer.putInt(position + 4, (int) crc.getValue());
+        buffer.putInt(position, body.length);
+        indexRecord(position);
+        writePosition = position + RECORD_OVERHEAD + body.length;
+    }
+
+    /**
+     * Appends up to {@code limit} messages with an id of at least {@code fromId} to {@code out}, in id order.
+     */
+    void read(int fromId, int limit, List<ChatMessage> out) {
+        int first = Math.max(fromId, baseId);
+        if (first >= baseId + recordCount || limit <= 0) {
+            return;
+        }
+
+        int position = indexOffsets[(first - baseId) / INDEX_INTERVAL];
+        ByteBuffer view = buffer.duplicate();
+        int added = 0;
+        while (position < writePosition && added < limit) {
+            int length = view.getInt(position);
+            int messageId = view.getInt(position + RECORD_OVERHEAD + 1);
+            if (messageId >= first) {
+                out.add(decode(view, position + RECORD_OVERHEAD));
+                added++;
+            }
+            position += RECORD_OVERHEAD + length;
+        }
+    }
+
+    /**
+     * Calls {@code visitor} with the room, sequence number and id of every record, in id order, without
+     * decoding the message text.
+     */
+    void visitRooms(RoomVisitor visitor) {
+        ByteBuffer view = buffer.duplicate();
+        int position = HEADER_SIZE;
+        while (position < writePosition) {
+            int length = view.getInt(position);
+            view.position(position + RECORD_OVERHEAD + 1);
+            int messageId = view.getInt();
+            String room = readString(view, view.getShort() & 0xFFFF);
+            visitor.visit(room, view.getInt(), messageId);
+            position += RECORD_OVERHEAD + length;
+        }
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    int getBaseId() {
+        return baseId;
+    }
+
+    int getLastId() {
+        return baseId + recordCount - 1;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    private void indexRecord(int position) {
+        if (recordCount % INDEX_INTERVAL == 0) {
+            int slot = recordCount / INDEX_INTERVAL;
+            if (slot == indexOffsets.length) {
+                indexOffsets = Arrays.copyOf(indexOffsets, slot * 2);
+            }
+            indexOffsets[slot] = position;
+        }
+        recordCount++;
+    }
+
+    private static ChatMessage decode(ByteBuffer view, int position) {
+        view.position(position + 1);
+        int messageId = view.getInt();
+        String room = readString(view, view.getShort() & 0xFFFF);
+        int roomSeq = view.getInt();
+        byte messageType = view.get();
+        long createdAt = view.getLong();
+        int userId = view.getInt();
+        String messageText = readString(view, view.getInt());
+        ChatMessage chatMessage = new ChatMessage(messageId, room, roomSeq, null, messageText);
+        chatMessage.setUserId(userId);
+        if (messageType != NO_TYPE) {
+            chatMessage.setMessageType(MessageType.values()[messageType]);
+        }
+        if (createdAt != NO_TIME) {
+            chatMessage.setCreatedAt(Instant.ofEpochMilli(createdAt));
+        }
+        return chatMessage;
+    }
+
+    private static String readString(ByteBuffer view, int length) {
+        byte[] bytes = new byte[length];
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    interface RoomVisitor {
+        void visit(String room, int roomSeq, int messageId);
+    }
+}
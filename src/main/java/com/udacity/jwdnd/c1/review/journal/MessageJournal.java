@@ -0,0 +1,258 @@
+package com.udacity.jwdnd.c1.review.journal;
+
+import com.udacity.jwdnd.c1.review.model.ChatMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Append-only message log made of fixed-size memory-mapped segments. The journal assigns dense message ids,
+ * rolls to a new segment when the current one is full and, on open, recovers the tail by scanning it for the
+ * last intact record. An in-memory index per room maps sequence numbers to ids, so room reads only touch that
+ * room's records; it is rebuilt from the segments on open.
+ */
+public class MessageJournal implements Closeable {
+    private Logger logger = LoggerFactory.getLogger(MessageJournal.class);
+
+    private Path directory;
+    private int segmentSize;
+    private boolean fsyncEachAppend;
+    private TreeMap<Integer, JournalSegment> segments = new TreeMap<>();
+    private JournalSegment tail;
+    private int lastId;
+    private Map<String, RoomIndex> rooms = new HashMap<>();
+    private ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public MessageJournal(Path directory, int segmentSize, boolean fsyncEachAppend) throws IOException {
+        if (segmentSize <= JournalSegment.HEADER_SIZE + JournalSegment.RECORD_OVERHEAD) {
+            throw new IllegalArgumentException("Journal segment size too small: " + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.fsyncEachAppend = fsyncEachAppend;
+
+        Files.createDirectories(directory);
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(path -> path.getFileName().toString().matches("\\d{20}\\.seg"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            JournalSegment segment = JournalSegment.recover(file);
+            segments.put(segment.getBaseId(), segment);
+        }
+
+        if (segments.isEmpty()) {
+            tail = JournalSegment.create(directory, 1, segmentSize);
+            segments.put(1, tail);
+        } else {
+            tail = segments.lastEntry().getValue();
+        }
+        lastId = tail.getLastId();
+        for (JournalSegment segment : segments.values()) {
+            segment.visitRooms((room, roomSeq, messageId) ->
+                    rooms.computeIfAbsent(room, name -> new RoomIndex()).add(roomSeq, messageId));
+        }
+        logger.info("Opened message journal in " + directory + " with " + segments.size()
+                + " segment(s), " + rooms.size() + " room(s), last message id " + lastId);
+    }
+
+    /**
+     * Assigns the next id to the message and appends it. Sequence numbers have to increase within a room;
+     * reusing one fails like the unique index of the MESSAGES table does.
+     */
+    public void append(ChatMessage chatMessage) {
+        lock.writeLock().lock();
+        try {
+            RoomIndex roomIndex = rooms.get(chatMessage.getRoom());
+            if (roomIndex != null && chatMessage.getRoomSeq() <= roomIndex.getLastSeq()) {
+                throw new DuplicateKeyException("Room " + chatMessage.getRoom() + " is already at sequence "
+                        + roomIndex.getLastSeq() + ", cannot append " + chatMessage.getRoomSeq());
+            }
+            int messageId = lastId + 1;
+            chatMessage.setMessageId(messageId);
+            byte[] body = JournalSegment.encode(chatMessage);
+            if (!tail.hasRoomFor(body.length)) {
+                if (JournalSegment.HEADER_SIZE + JournalSegment.RECORD_OVERHEAD + body.length > segmentSize) {
+                    chatMessage.setMessageId(null);
+                    throw new IllegalArgumentException("Message of " + body.length + " bytes exceeds the journal segment size");
+                }
+                roll(messageId);
+            }
+            tail.append(body);
+            if (fsyncEachAppend) {
+                tail.force();
+            }
+            lastId = messageId;
+            rooms.computeIfAbsent(chatMessage.getRoom(), name -> new RoomIndex())
+                    .add(chatMessage.getRoomSeq(), messageId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} messages with an id of at least {@code fromId}, in id order.
+     */
+    public List<ChatMessage> read(int fromId, int limit) {
+        List<ChatMessage> messages = new ArrayList<>(Math.min(limit, 1024));
+        lock.readLock().lock();
+        try {
+            Integer start = segments.floorKey(fromId);
+            Map<Integer, JournalSegment> candidates = start == null ? segments : segments.tailMap(start, true);
+            for (JournalSegment segment : candidates.values()) {
+                segment.read(fromId, limit - messages.size(), messages);
+                if (messages.size() >= limit) {
+                    break;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return messages;
+    }
+
+    /**
+     * Returns up to {@code limit} messages of {@code room} with a sequence number above {@code afterSeq}, in
+     * sequence order.
+     */
+    public List<ChatMessage> readRoomAfter(String room, int afterSeq, int limit) {
+        lock.readLock().lock();
+        try {
+            RoomIndex roomIndex = rooms.get(room);
+            if (roomIndex == null) {
+                return new ArrayList<>();
+            }
+            int from = roomIndex.indexAbove(afterSeq);
+            return readIds(roomIndex, from, (int) Math.min((long) from + limit, roomIndex.size));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the newest {@code limit} messages of {@code room} with a sequence number below {@code beforeSeq},
+     * in sequence order.
+     */
+    public List<ChatMessage> readRoomBefore(String room, int beforeSeq, int limit) {
+        lock.readLock().lock();
+        try {
+            RoomIndex roomIndex = rooms.get(room);
+            if (roomIndex == null) {
+                return new ArrayList<>();
+            }
+            int to = roomIndex.indexAbove(beforeSeq - 1);
+            return readIds(roomIndex, Math.max(0, to - limit), to);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Integer getLastRoomSeq(String room) {
+        lock.readLock().lock();
+        try {
+            RoomIndex roomIndex = rooms.get(room);
+            return roomIndex == null ? null : roomIndex.getLastSeq();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getFirstId() {
+        lock.readLock().lock();
+        try {
+            return segments.firstKey();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getLastId() {
+        lock.readLock().lock();
+        try {
+            return lastId;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            for (JournalSegment segment : segments.values()) {
+                segment.close();
+            }
+            segments.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // callers hold the read lock
+    private List<ChatMessage> readIds(RoomIndex roomIndex, int from, int to) {
+        List<ChatMessage> messages = new ArrayList<>(Math.max(0, to - from));
+        for (int i = from; i < to; i++) {
+            int messageId = roomIndex.ids[i];
+            segments.floorEntry(messageId).getValue().read(messageId, 1, messages);
+        }
+        return messages;
+    }
+
+    private void roll(int baseId) {
+        try {
+            tail.force();
+            tail = JournalSegment.create(directory, baseId, segmentSize);
+            segments.put(baseId, tail);
+            logger.info("Rolled message journal to segment " + tail.getPath().getFileName());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to roll message journal segment", e);
+        }
+    }
+
+    /**
+     * Sequence numbers of one room in ascending order, with the id of the message each one belongs to.
+     */
+    private static class RoomIndex {
+        private int[] seqs = new int[16];
+        private int[] ids = new int[16];
+        private int size;
+
+        void add(int roomSeq, int messageId) {
+            if (size == seqs.length) {
+                seqs = Arrays.copyOf(seqs, size * 2);
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            seqs[size] = roomSeq;
+            ids[size] = messageId;
+            size++;
+        }
+
+        int getLastSeq() {
+            return size == 0 ? 0 : seqs[size - 1];
+        }
+
+        // position of the first sequence number greater than seq
+        int indexAbove(int seq) {
+            int index = Arrays.binarySearch(seqs, 0, size, seq);
+            return index >= 0 ? index + 1 : -index - 1;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.udacity.jwdnd.c1.review.mapper;
+
+import com.udacity.jwdnd.c1.review.model.ChatMessage;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.List;
+
+/**
+ * What the message archiver needs from MESSAGES on top of {@link MessageMapper}. The journal backend has no
+ * deletes, so unlike {@link MessageMapper} this has no journal implementation.
+ */
+@Mapper
+public interface MessageArchiveMapper {
+    @Select("SELECT " + MessageMapper.COLUMNS + " FROM MESSAGES ORDER BY messageid LIMIT #{limit}")
+    List<ChatMessage> getOldestMessages(@Param("limit") int limit);
+
+    // the id that has offset newer ones, i.e. the oldest of the newest offset + 1 messages
+    @Select("SELECT messageid FROM MESSAGES ORDER BY messageid DESC LIMIT 1 OFFSET #{offset}")
+    Integer getMessageIdFromNewest(@Param("offset") int offset);
+
+    @Delete({"<script>",
+            "DELETE FROM MESSAGES WHERE messageid IN",
+            "<foreach item='id' collection='ids' open='(' separator=',' close=')'>#{id}</foreach>",
+            "</script>"})
+    int deleteMessages(@Param("ids") List<Integer> ids);
+}
@@ -4,16 +4,76 @@ import com.udacity.jwdnd.c1.review.model.ChatMessage;
 import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.cursor.Cursor;
 
 import java.util.List;
 
 @Mapper
 public interface MessageMapper {
-    @Select("SELECT * FROM MESSAGES")
-    List<ChatMessage> getAllMessages();
+    String COLUMNS = "messageid, room, roomseq, userid, messagetext, messagetype, createdat";
 
-    @Insert("INSERT INTO MESSAGES (userName, messageText) VALUES (#{userName}, #{messageText})")
+    // the cursor is only usable while the surrounding transaction keeps its SqlSession open
+    @Select("SELECT " + COLUMNS + " FROM MESSAGES ORDER BY messageid")
+    @Options(fetchSize = 1000)
+    Cursor<ChatMessage> streamAllMessages();
+
+    @Select("SELECT " + COLUMNS + " FROM " +
+            "(SELECT " + COLUMNS + " FROM MESSAGES " +
+            "ORDER BY messageid DESC LIMIT #{limit}) m " +
+            "ORDER BY messageid")
+    List<ChatMessage> getLatestMessages(@Param("limit") int limit);
+
+    @Select("SELECT " + COLUMNS + " FROM " +
+            "(SELECT " + COLUMNS + " FROM MESSAGES WHERE messageid < #{beforeId} " +
+            "ORDER BY messageid DESC LIMIT #{limit}) m " +
+            "ORDER BY messageid")
+    List<ChatMessage> getMessagesBefore(@Param("beforeId") int beforeId, @Param("limit") int limit);
+
+    @Select("SELECT " + COLUMNS + " FROM MESSAGES WHERE messageid > #{afterId} " +
+            "ORDER BY messageid LIMIT #{limit}")
+    List<ChatMessage> getMessagesAfter(@Param("afterId") int afterId, @Param("limit") int limit);
+
+    @Select({"<script>",
+            "SELECT " + COLUMNS + " FROM MESSAGES WHERE messageid IN",
+            "<foreach item='id' collection='ids' open='(' separator=',' close=')'>#{id}</foreach>",
+            "ORDER BY messageid DESC",
+            "</script>"})
+    List<ChatMessage> getMessagesByIds(@Param("ids") List<Integer> ids);
+
+    // room reads below are range scans of idx_messages_room_seq, so they only touch that room's rows
+
+    @Select("SELECT roomseq FROM MESSAGES WHERE room = #{room} ORDER BY roomseq DESC LIMIT 1")
+    Integer getLastRoomSeq(@Param("room") String room);
+
+    @Select("SELECT " + COLUMNS + " FROM " +
+            "(SELECT " + COLUMNS + " FROM MESSAGES WHERE room = #{room} " +
+            "ORDER BY roomseq DESC LIMIT #{limit}) m " +
+            "ORDER BY roomseq")
+    List<ChatMessage> getLatestRoomMessages(@Param("room") String room, @Param("limit") int limit);
+
+    @Select("SELECT " + COLUMNS + " FROM " +
+            "(SELECT " + COLUMNS + " FROM MESSAGES " +
+            "WHERE room = #{room} AND roomseq < #{beforeSeq} ORDER BY roomseq DESC LIMIT #{limit}) m " +
+            "ORDER BY roomseq")
+    List<ChatMessage> getRoomMessagesBefore(@Param("room") String room, @Param("beforeSeq") int beforeSeq,
+                                            @Param("limit") int limit);
+
+    @Select("SELECT " + COLUMNS + " FROM MESSAGES " +
+            "WHERE room = #{room} AND roomseq > #{afterSeq} ORDER BY roomseq LIMIT #{limit}")
+    List<ChatMessage> getRoomMessagesAfter(@Param("room") String room, @Param("afterSeq") int afterSeq,
+                                           @Param("limit") int limit);
+
+    @Select("SELECT " + COLUMNS + " FROM MESSAGES " +
+            "WHERE room = #{room} ORDER BY roomseq")
+    @Options(fetchSize = 1000)
+    Cursor<ChatMessage> streamRoomMessages(@Param("room") String room);
+
+    // the unique (room, roomseq) index turns a reused sequence number into a DuplicateKeyException
+    // messages only carry the author's id, see UserNameCache for the name
+    @Insert("INSERT INTO MESSAGES (room, roomseq, userid, messagetext, messagetype, createdat) " +
+            "VALUES (#{room}, #{roomSeq}, #{userId}, #{messageText}, #{messageType}, #{createdAt})")
     @Options(useGeneratedKeys = true, keyProperty = "messageId")
     int insert(ChatMessage chatMessage);
 }
@@ -5,13 +5,32 @@ import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Options;
 import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.cursor.Cursor;
 
 @Mapper
 public interface UserMapper {
     @Select("SELECT * FROM USERS WHERE username = #{userName}")
     User getUser(String userName);
 
-    @Insert("INSERT INTO USERS (username, salt, password, firstname, lastname) VALUES(#{userName}, #{salt}, #{password}, #{firstName}, #{lastName})")
+    @Select("SELECT username FROM USERS WHERE userid = #{userId}")
+    String getUserName(int userId);
+
+    // like MessageMapper.streamAllMessages, only usable inside a transaction
+    @Select("SELECT * FROM USERS ORDER BY userid")
+    @Options(fetchSize = 1000)
+    Cursor<User> streamAllUsers();
+
+    @Select("SELECT username FROM USERS")
+    @Options(fetchSize = 1000)
+    Cursor<String> streamAllUserNames();
+
+    @Insert("INSERT INTO USERS (username, salt, password, firstname, lastname, hashiterations, hashkeylength) " +
+            "VALUES(#{userName}, #{salt}, #{password}, #{firstName}, #{lastName}, #{hashIterations}, #{hashKeyLength})")
     @Options(useGeneratedKeys = true, keyProperty = "userId")
     int insert(User user);
+
+    @Update("UPDATE USERS SET password = #{password}, hashiterations = #{hashIterations}, " +
+            "hashkeylength = #{hashKeyLength} WHERE userid = #{userId}")
+    int updatePasswordHash(User user);
 }
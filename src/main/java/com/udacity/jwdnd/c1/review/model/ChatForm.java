@@ -3,10 +3,14 @@ package com.udacity.jwdnd.c1.review.model;
 public class ChatForm {
     private String userName;
 
+    private String room;
+
     private String messageText;
 
     private MessageType messageType;
 
+    private String idempotencyKey;
+
     public String getUserName() {
         return userName;
     }
@@ -15,6 +19,14 @@ public class ChatForm {
         this.userName = userName;
     }
 
+    public String getRoom() {
+        return room;
+    }
+
+    public void setRoom(String room) {
+        this.room = room;
+    }
+
     public String getMessageText() {
         return messageText;
     }
@@ -30,4 +42,12 @@ public class ChatForm {
     public void setMessageType(MessageType messageType) {
         this.messageType = messageType;
     }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
 }
@@ -1,18 +1,41 @@
 package com.udacity.jwdnd.c1.review.model;
 
+import java.time.Instant;
+
 public class ChatMessage {
     private Integer messageId;
 
+    private String room;
+
+    private Integer roomSeq;
+
+    private Integer userId;
+
     private String userName;
 
     private String messageText;
 
+    private MessageType messageType;
+
+    private Instant createdAt;
+
+    public ChatMessage() {
+    }
+
     public ChatMessage(Integer messageId, String userName, String messageText) {
         this.messageId = messageId;
         this.userName = userName;
         this.messageText = messageText;
     }
 
+    public ChatMessage(Integer messageId, String room, Integer roomSeq, String userName, String messageText) {
+        this.messageId = messageId;
+        this.room = room;
+        this.roomSeq = roomSeq;
+        this.userName = userName;
+        this.messageText = messageText;
+    }
+
     public Integer getMessageId() {
         return messageId;
     }
@@ -21,6 +44,33 @@ public class ChatMessage {
         this.messageId = messageId;
     }
 
+    public String getRoom() {
+        return room;
+    }
+
+    public void setRoom(String room) {
+        this.room = room;
+    }
+
+    public Integer getRoomSeq() {
+        return roomSeq;
+    }
+
+    public void setRoomSeq(Integer roomSeq) {
+        this.roomSeq = roomSeq;
+    }
+
+    public Integer getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Integer userId) {
+        this.userId = userId;
+    }
+
+    /**
+     * Name of the author. Storage only keeps {@link #getUserId()}; the name is filled in when the message is read.
+     */
     public String getUserName() {
         return userName;
     }
@@ -37,6 +87,22 @@ public class ChatMessage {
         this.messageText = messageText;
     }
 
+    public MessageType getMessageType() {
+        return messageType;
+    }
+
+    public void setMessageType(MessageType messageType) {
+        this.messageType = messageType;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Instant createdAt) {
+        this.createdAt = createdAt;
+    }
+
     @Override
     public String toString() {
         return userName + ": " + messageText;
@@ -0,0 +1,43 @@
+package com.udacity.jwdnd.c1.review.model;
+
+import java.util.Map;
+
+public class ChatStats {
+    private long totalMessages;
+    private Map<MessageType, Long> messagesByType;
+    private Map<Integer, Double> postsPerMinute;
+    private String userName;
+    private long userMessages;
+
+    public ChatStats(long totalMessages, Map<MessageType, Long> messagesByType, Map<Integer, Double> postsPerMinute,
+                     String userName, long userMessages) {
+        this.totalMessages = totalMessages;
+        this.messagesByType = messagesByType;
+        this.postsPerMinute = postsPerMinute;
+        this.userName = userName;
+        this.userMessages = userMessages;
+    }
+
+    public long getTotalMessages() {
+        return totalMessages;
+    }
+
+    public Map<MessageType, Long> getMessagesByType() {
+        return messagesByType;
+    }
+
+    /**
+     * Average posts per minute, keyed by the length of the window in minutes.
+     */
+    public Map<Integer, Double> getPostsPerMinute() {
+        return postsPerMinute;
+    }
+
+    public String getUserName() {
+        return userName;
+    }
+
+    public long getUserMessages() {
+        return userMessages;
+    }
+}
@@ -0,0 +1,29 @@
+package com.udacity.jwdnd.c1.review.model;
+
+public class ImportResult {
+    private long users;
+    private long messages;
+    private long millis;
+
+    public ImportResult(long users, long messages, long millis) {
+        this.users = users;
+        this.messages = messages;
+        this.millis = millis;
+    }
+
+    public long getUsers() {
+        return users;
+    }
+
+    public long getMessages() {
+        return messages;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+
+    public long getRowsPerSecond() {
+        return millis == 0 ? users + messages : (users + messages) * 1000 / millis;
+    }
+}
@@ -0,0 +1,41 @@
+package com.udacity.jwdnd.c1.review.model;
+
+import java.util.List;
+
+public class MessagePage {
+    private List<ChatMessage> messages;
+
+    private Integer olderCursor;
+
+    private Integer newerCursor;
+
+    public MessagePage(List<ChatMessage> messages, Integer olderCursor, Integer newerCursor) {
+        this.messages = messages;
+        this.olderCursor = olderCursor;
+        this.newerCursor = newerCursor;
+    }
+
+    public List<ChatMessage> getMessages() {
+        return messages;
+    }
+
+    public void setMessages(List<ChatMessage> messages) {
+        this.messages = messages;
+    }
+
+    public Integer getOlderCursor() {
+        return olderCursor;
+    }
+
+    public void setOlderCursor(Integer olderCursor) {
+        this.olderCursor = olderCursor;
+    }
+
+    public Integer getNewerCursor() {
+        return newerCursor;
+    }
+
+    public void setNewerCursor(Integer newerCursor) {
+        this.newerCursor = newerCursor;
+    }
+}
@@ -7,6 +7,11 @@ public class User {
     private String password;
     private String firstName;
     private String lastName;
+    private int hashIterations;
+    private int hashKeyLength;
+
+    public User() {
+    }
 
     public User(Integer userId, String userName, String salt, String password, String firstName, String lastName) {
         this.userId = userId;
@@ -17,6 +22,13 @@ public class User {
         this.lastName = lastName;
     }
 
+    public User(Integer userId, String userName, String salt, String password, String firstName, String lastName,
+                int hashIterations, int hashKeyLength) {
+        this(userId, userName, salt, password, firstName, lastName);
+        this.hashIterations = hashIterations;
+        this.hashKeyLength = hashKeyLength;
+    }
+
     public Integer getUserId() {
         return userId;
     }
@@ -64,4 +76,20 @@ public class User {
     public void setLastName(String lastName) {
         this.lastName = lastName;
     }
+
+    public int getHashIterations() {
+        return hashIterations;
+    }
+
+    public void setHashIterations(int hashIterations) {
+        this.hashIterations = hashIterations;
+    }
+
+    public int getHashKeyLength() {
+        return hashKeyLength;
+    }
+
+    public void setHashKeyLength(int hashKeyLength) {
+        this.hashKeyLength = hashKeyLength;
+    }
 }
@@ -0,0 +1,106 @@
+package com.udacity.jwdnd.c1.review.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseCookie;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+
+/**
+ * Issues and checks the login token that replaces the HTTP session:
+ * {@code base64url(username).expiresAtEpochSecond.base64url(hmacSha256)}. Checking a token needs only the
+ * key, so any node configured with the same {@code chat.auth.token.secret} accepts it. Tokens cannot be
+ * revoked before they expire; logging out only deletes the cookie.
+ */
+@Service
+public class AuthTokenService {
+    public static final String COOKIE_NAME = "chat_token";
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private Logger logger = LoggerFactory.getLogger(AuthTokenService.class);
+
+    private SecretKeySpec key;
+    private Duration ttl;
+    private ThreadLocal<Mac> macs = ThreadLocal.withInitial(this::newMac);
+
+    public AuthTokenService(@Value("${chat.auth.token.secret:}") String secret,
+                            @Value("${chat.auth.token.ttl-minutes:720}") long ttlMinutes) {
+        byte[] keyBytes;
+        if (secret.isBlank()) {
+            keyBytes = new byte[32];
+            new SecureRandom().nextBytes(keyBytes);
+            logger.warn("chat.auth.token.secret is not set, using a random key: logins will not survive a restart "
+                    + "and are only accepted by this node");
+        } else {
+            keyBytes = Base64.getDecoder().decode(secret);
+        }
+        this.key = new SecretKeySpec(keyBytes, ALGORITHM);
+        this.ttl = Duration.ofMinutes(ttlMinutes);
+    }
+
+    public String issue(String userName) {
+        long expiresAt = System.currentTimeMillis() / 1000 + ttl.getSeconds();
+        String payload = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(userName.getBytes(StandardCharsets.UTF_8)) + "." + expiresAt;
+        return payload + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(sign(payload));
+    }
+
+    /**
+     * Returns the user name the token was issued to, or {@code null} if it is malformed, forged or expired.
+     */
+    public String verify(String token) {
+        int signatureStart = token.lastIndexOf('.');
+        int expiryStart = token.lastIndexOf('.', signatureStart - 1);
+        if (expiryStart < 1) {
+            return null;
+        }
+        try {
+            String payload = token.substring(0, signatureStart);
+            byte[] signature = Base64.getUrlDecoder().decode(token.substring(signatureStart + 1));
+            if (!MessageDigest.isEqual(sign(payload), signature)) {
+                return null;
+            }
+            long expiresAt = Long.parseLong(token.substring(expiryStart + 1, signatureStart));
+            if (expiresAt <= System.currentTimeMillis() / 1000) {
+                return null;
+            }
+            return new String(Base64.getUrlDecoder().decode(token.substring(0, expiryStart)), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public ResponseCookie createCookie(String token, boolean secure) {
+        return ResponseCookie.from(COOKIE_NAME, token)
+                .httpOnly(true)
+                .secure(secure)
+                .sameSite("Lax")
+                .path("/")
+                .maxAge(ttl)
+                .build();
+    }
+
+    private byte[] sign(String payload) {
+        return macs.get().doFinal(payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot create " + ALGORITHM + " for login tokens", e);
+        }
+    }
+}
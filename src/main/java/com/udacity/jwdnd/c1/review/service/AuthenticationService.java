@@ -2,41 +2,140 @@ package com.udacity.jwdnd.c1.review.service;
 
 import com.udacity.jwdnd.c1.review.mapper.UserMapper;
 import com.udacity.jwdnd.c1.review.model.User;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.AuthenticationServiceException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class AuthenticationService implements AuthenticationProvider {
+    private Logger logger = LoggerFactory.getLogger(AuthenticationService.class);
+
     private UserMapper userMapper;
     private HashService hashService;
+    private MeterRegistry meterRegistry;
+    private BlockingWorkExecutor blockingWork;
+    private Set<Integer> rehashesInFlight = ConcurrentHashMap.newKeySet();
 
-    public AuthenticationService(UserMapper userMapper, HashService hashService) {
+    public AuthenticationService(UserMapper userMapper, HashService hashService, MeterRegistry meterRegistry,
+                                 BlockingWorkExecutor blockingWork) {
         this.userMapper = userMapper;
         this.hashService = hashService;
+        this.meterRegistry = meterRegistry;
+        this.blockingWork = blockingWork;
     }
 
     @Override
     public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            Authentication result = checkCredentials(authentication);
+            outcome = result != null ? "success" : "failure";
+            return result;
+        } finally {
+            sample.stop(meterRegistry.timer("chat.authentication", "outcome", outcome));
+        }
+    }
+
+    /**
+     * The same check for async request handlers: the user lookup runs on {@link BlockingWorkExecutor} and the
+     * hash on the hashing pool. Completes with {@code null} for wrong credentials and fails with a
+     * {@link HashingUnavailableException} or {@link BlockingWorkRejectedException} when either pool is full.
+     */
+    public CompletableFuture<Authentication> authenticateAsync(String username, String password) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        return blockingWork.supply(() -> userMapper.getUser(username))
+                .thenCompose(user -> {
+                    if (!canLogIn(user)) {
+                        return CompletableFuture.completedFuture((Authentication) null);
+                    }
+                    return hashService.hashAsync(password, user.getSalt(), user.getHashIterations(),
+                            user.getHashKeyLength())
+                            .thenApply(hashedPassword -> checkHash(user, password, hashedPassword));
+                })
+                .whenComplete((result, e) -> {
+                    String outcome = e != null ? "error" : result != null ? "success" : "failure";
+                    sample.stop(meterRegistry.timer("chat.authentication", "outcome", outcome));
+                });
+    }
+
+    private Authentication checkCredentials(Authentication authentication) {
         String username = authentication.getName();
         String password = authentication.getCredentials().toString();
 
         User user = userMapper.getUser(username);
-        if (user != null) {
+        if (canLogIn(user)) {
             String encodedSalt = user.getSalt();
-            String hashedPassword = hashService.getHashedValue(password, encodedSalt);
-            if (hashedPassword.equals(user.getPassword())) {
-                return new UsernamePasswordAuthenticationToken(user, password, new ArrayList<>());
+            String hashedPassword;
+            try {
+                hashedPassword = hashService.getHashedValue(password, encodedSalt, user.getHashIterations(),
+                        user.getHashKeyLength());
+            } catch (HashingUnavailableException e) {
+                throw new AuthenticationServiceException(e.getMessage(), e);
             }
+            return checkHash(user, password, hashedPassword);
         }
 
         return null;
     }
 
+    // users created by the message author migration have no password and cannot log in
+    private boolean canLogIn(User user) {
+        return user != null && user.getPassword() != null;
+    }
+
+    private Authentication checkHash(User user, String password, String hashedPassword) {
+        if (!hashedPassword.equals(user.getPassword())) {
+            return null;
+        }
+        if (hashService.needsRehash(user.getHashIterations(), user.getHashKeyLength())) {
+            rehash(user, password);
+        }
+        // the principal ends up in the login token, so only the name is kept
+        return new UsernamePasswordAuthenticationToken(user.getUserName(), null, new ArrayList<>());
+    }
+
+    /**
+     * Upgrades a hash made at an older cost while we still have the plain password. Runs on the hashing pool
+     * after the login has been answered; if the pool is busy it is skipped and tried again on the next login.
+     */
+    private void rehash(User user, String password) {
+        int iterations = hashService.getTargetIterations();
+        int keyLength = hashService.getKeyLength();
+        if (!rehashesInFlight.add(user.getUserId())) {
+            return;
+        }
+        CompletableFuture<String> hashedPassword = hashService.hashInBackground(password, user.getSalt(),
+                iterations, keyLength);
+        if (hashedPassword == null) {
+            rehashesInFlight.remove(user.getUserId());
+            return;
+        }
+        hashedPassword.thenAccept(hash -> {
+            userMapper.updatePasswordHash(new User(user.getUserId(), user.getUserName(), user.getSalt(), hash,
+                    user.getFirstName(), user.getLastName(), iterations, keyLength));
+            meterRegistry.counter("chat.authentication.rehash").increment();
+            logger.debug("Rehashed password of " + user.getUserName() + " with " + iterations + " iterations");
+        }).whenComplete((ignored, e) -> {
+            rehashesInFlight.remove(user.getUserId());
+            if (e != null) {
+                logger.warn("Rehashing the password of " + user.getUserName() + " failed: " + e.getMessage());
+            }
+        });
+    }
+
     @Override
     public boolean supports(Class<?> authentication) {
         return authentication.equals(UsernamePasswordAuthenticationToken.class);
@@ -0,0 +1,245 @@
+package com.udacity.jwdnd.c1.review.service;
+
+import com.udacity.jwdnd.c1.review.mapper.MessageMapper;
+import com.udacity.jwdnd.c1.review.model.ChatMessage;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind ingestion for chat messages. Posters enqueue into a bounded queue and a single drainer
+ * thread inserts them in JDBC batches, one transaction per batch, flushing when either the batch size or
+ * the maximum delay is reached.
+ * <p>
+ * Posters first {@link #reserve()} a place in the queue, which is where they wait when it is full, and only
+ * then take a sequence number and {@link #submit} under their room's lock.
+ * <p>
+ * A batch that fails, e.g. because another node took one of its sequence numbers, is written again one message
+ * at a time, so only the messages that fail on their own are rejected.
+ */
+@Service
+public class BatchMessageWriter {
+    public enum AckMode {
+        /** The post returns once the message is queued; it is lost if the node dies before the next flush. */
+        ENQUEUED,
+        /** The post waits until the batch holding the message has been committed. */
+        FLUSHED
+    }
+
+    private Logger logger = LoggerFactory.getLogger(BatchMessageWriter.class);
+
+    private SqlSessionTemplate batchSqlSession;
+    private TransactionTemplate transactionTemplate;
+    private boolean enabled;
+    private AckMode ackMode;
+    private int batchSize;
+    private long maxDelayNanos;
+    private long offerTimeoutMillis;
+    private BlockingQueue<PendingMessage> queue;
+    private Semaphore freeSlots;
+    private Thread drainer;
+    private volatile boolean running;
+
+    public BatchMessageWriter(SqlSessionFactory sqlSessionFactory,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${chat.write-behind.enabled:false}") boolean enabled,
+                              @Value("${chat.storage.backend:h2}") String storageBackend,
+                              @Value("${chat.write-behind.ack:FLUSHED}") AckMode ackMode,
+                              @Value("${chat.write-behind.queue-capacity:10000}") int queueCapacity,
+                              @Value("${chat.write-behind.batch-size:256}") int batchSize,
+                              @Value("${chat.write-behind.max-delay-ms:5}") long maxDelayMillis,
+                              @Value("${chat.write-behind.offer-timeout-ms:100}") long offerTimeoutMillis) {
+        this.batchSqlSession = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // journal appends are already sequential and in-memory, batching them through JDBC would bypass the journal
+        this.enabled = enabled && "h2".equals(storageBackend);
+        if (enabled && !this.enabled) {
+            logger.warn("Write-behind ingestion is ignored for the " + storageBackend + " storage backend");
+        }
+        this.ackMode = ackMode;
+        this.batchSize = batchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.freeSlots = new Semaphore(queueCapacity);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        drainer = new Thread(this::drainLoop, "chat-write-behind");
+        drainer.setDaemon(true);
+        drainer.start();
+        logger.info("Write-behind message ingestion enabled (ack " + ackMode + ", batch size " + batchSize + ")");
+    }
+
+    /**
+     * Reserves a place in the queue for one message. Blocks for at most the offer timeout when the queue is
+     * full and then rejects the message, so a burst pushes back on posters instead of growing without bound.
+     * Every reservation must be followed by a {@link #submit}.
+     */
+    public void reserve() {
+        boolean reserved = false;
+        try {
+            reserved = running && freeSlots.tryAcquire(offerTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!reserved) {
+            throw new MessageRejectedException("The chat is busy right now, please try again in a moment.");
+        }
+    }
+
+    /**
+     * Queues the message for the next batch in the place taken by {@link #reserve()}; never blocks. Only fails
+     * when the writer is shutting down.
+     */
+    public CompletableFuture<ChatMessage> submit(ChatMessage chatMessage) {
+        PendingMessage pending = new PendingMessage(chatMessage);
+        if (!running || !queue.offer(pending)) {
+            freeSlots.release();
+            throw new MessageRejectedException("The chat is shutting down.");
+        }
+        return pending.future;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public AckMode getAckMode() {
+        return ackMode;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        drainer.join();
+
+        List<PendingMessage> leftovers = new ArrayList<>();
+        queue.drainTo(leftovers);
+        leftovers.forEach(pending -> pending.future.completeExceptionally(
+                new MessageRejectedException("The chat is shutting down.")));
+        logger.info("Write-behind message ingestion stopped");
+    }
+
+    private void drainLoop() {
+        List<PendingMessage> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingMessage first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                        break;
+                    }
+                    PendingMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                logger.warn("Write-behind drainer interrupted, flushing what it has");
+            }
+            freeSlots.release(batch.size());
+
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingMessage> batch) {
+        try {
+            write(batch);
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                fail(batch.get(0), e);
+                return;
+            }
+            logger.warn("Failed to write a batch of " + batch.size() + " chat messages, writing them one by one", e);
+            for (PendingMessage pending : batch) {
+                pending.chatMessage.setMessageId(null);
+                try {
+                    write(List.of(pending));
+                } catch (RuntimeException single) {
+                    fail(pending, single);
+                    continue;
+                }
+                complete(pending);
+            }
+            return;
+        }
+        batch.forEach(this::complete);
+    }
+
+    private void write(List<PendingMessage> batch) {
+        transactionTemplate.executeWithoutResult(status -> {
+            MessageMapper messageMapper = batchSqlSession.getMapper(MessageMapper.class);
+            for (PendingMessage pending : batch) {
+                messageMapper.insert(pending.chatMessage);
+            }
+            // executes the JDBC batch and copies the generated keys back onto the messages
+            batchSqlSession.flushStatements();
+        });
+    }
+
+    private void complete(PendingMessage pending) {
+        if (pending.chatMessage.getMessageId() == null) {
+            pending.future.completeExceptionally(
+                    new IllegalStateException("No generated id returned for batched chat message"));
+        } else {
+            pending.future.complete(pending.chatMessage);
+        }
+    }
+
+    private void fail(PendingMessage pending, RuntimeException e) {
+        logger.error("Failed to write chat message " + pending.chatMessage.getRoomSeq() + " of room "
+                + pending.chatMessage.getRoom(), e);
+        pending.future.completeExceptionally(e);
+    }
+
+    private static class PendingMessage {
+        private ChatMessage chatMessage;
+        private CompletableFuture<ChatMessage> future = new CompletableFuture<>();
+
+        PendingMessage(ChatMessage chatMessage) {
+            this.chatMessage = chatMessage;
+        }
+    }
+}
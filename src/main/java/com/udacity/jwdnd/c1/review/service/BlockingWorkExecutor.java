@@ -0,0 +1,99 @@
+package com.udacity.jwdnd.c1.review.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Runs the blocking part of a request handler, i.e. mapper calls, on a bounded pool when
+ * {@code chat.web.async.enabled} is set, so Spring MVC releases the servlet thread until the result is ready.
+ * Handlers return the {@link CompletableFuture} in either mode; without async mode the work has already run on
+ * the servlet thread when it is returned. Password hashing keeps its own pool in {@link HashService}.
+ * <p>
+ * Pool threads carry no security context: handlers resolve the current user before handing work off. When the
+ * queue is full the future fails right away with a {@link BlockingWorkRejectedException}.
+ */
+@Service
+public class BlockingWorkExecutor {
+    private Logger logger = LoggerFactory.getLogger(BlockingWorkExecutor.class);
+
+    private ThreadPoolExecutor executor;
+    private LongAdder rejectedTasks = new LongAdder();
+
+    public BlockingWorkExecutor(@Value("${chat.web.async.enabled:false}") boolean async,
+                                @Value("${chat.web.async.threads:16}") int threads,
+                                @Value("${chat.web.async.queue-limit:1000}") int queueLimit) {
+        if (async) {
+            AtomicInteger threadCount = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueLimit), runnable -> {
+                        Thread thread = new Thread(runnable, "blocking-work-" + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            logger.info("Request handlers run blocking work on " + threads + " threads");
+        }
+    }
+
+    public boolean isAsync() {
+        return executor != null;
+    }
+
+    /**
+     * Runs {@code work} on the pool, or inline in blocking mode. A full queue fails the returned future
+     * instead of throwing, so handlers can return it as is or chain it after other asynchronous steps.
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> work) {
+        if (!isAsync()) {
+            try {
+                return CompletableFuture.completedFuture(work.get());
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        try {
+            return submit(work);
+        } catch (BlockingWorkRejectedException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    public int getQueueDepth() {
+        return isAsync() ? executor.getQueue().size() : 0;
+    }
+
+    public int getActiveTasks() {
+        return isAsync() ? executor.getActiveCount() : 0;
+    }
+
+    public long getRejectedTasks() {
+        return rejectedTasks.sum();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (isAsync()) {
+            executor.shutdownNow();
+        }
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> work) {
+        try {
+            return CompletableFuture.supplyAsync(work, executor);
+        } catch (RejectedExecutionException e) {
+            rejectedTasks.increment();
+            throw new BlockingWorkRejectedException("Too many requests in progress, please try again shortly.");
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.udacity.jwdnd.c1.review.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class BulkImportException extends RuntimeException {
+    public BulkImportException(String message) {
+        super(message);
+    }
+
+    public BulkImportException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,386 @@
+package com.udacity.jwdnd.c1.review.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.udacity.jwdnd.c1.review.archive.MessageArchive;
+import com.udacity.jwdnd.c1.review.mapper.MessageMapper;
+import com.udacity.jwdnd.c1.review.mapper.UserMapper;
+import com.udacity.jwdnd.c1.review.model.ChatMessage;
+import com.udacity.jwdnd.c1.review.model.ImportResult;
+import com.udacity.jwdnd.c1.review.model.MessageType;
+import com.udacity.jwdnd.c1.review.model.User;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Moves USERS and MESSAGES in and out as NDJSON, one object per line with its {@code kind} as the first field,
+ * followed by the model's properties ({@code createdAt} as epoch milliseconds):
+ * <pre>
+ * {"kind":"user","userName":"alice","salt":"...","password":"...",...,"hashKeyLength":256}
+ * {"kind":"message","room":"general","roomSeq":1,"userName":"alice","messageText":"hi",...}
+ * </pre>
+ * Export writes straight from mapper cursors and import parses token by token, inserting in JDBC batches of
+ * {@code chat.bulk.batch-size} with a commit every {@code chat.bulk.chunk-size} rows, so memory use does not
+ * depend on the size of the data set. Ids are not carried over; users and messages get new ones on import, and
+ * messages name their author so they can be linked to the new user ids.
+ */
+@Service
+public class BulkTransferService {
+    private Logger logger = LoggerFactory.getLogger(BulkTransferService.class);
+
+    private UserMapper userMapper;
+    private MessageMapper messageMapper;
+    private MessageArchive messageArchive;
+    private MessageEventBus messageEventBus;
+    private UserNameCache userNameCache;
+    private UserNameBloomFilter userNameBloomFilter;
+    private SqlSessionTemplate batchSqlSession;
+    private TransactionTemplate transactionTemplate;
+    private JsonFactory jsonFactory;
+    private boolean journalBackend;
+    private Set<String> admins;
+    private int batchSize;
+    private int chunkSize;
+    private long progressInterval;
+
+    public BulkTransferService(UserMapper userMapper, MessageMapper messageMapper, MessageArchive messageArchive,
+                               MessageEventBus messageEventBus,
+                               UserNameCache userNameCache, UserNameBloomFilter userNameBloomFilter,
+                               SqlSessionFactory sqlSessionFactory, PlatformTransactionManager transactionManager,
+                               ObjectMapper objectMapper,
+                               @Value("${chat.storage.backend:h2}") String storageBackend,
+                               @Value("${chat.bulk.admins:}") String[] admins,
+                               @Value("${chat.bulk.batch-size:1000}") int batchSize,
+                               @Value("${chat.bulk.chunk-size:20000}") int chunkSize,
+                               @Value("${chat.bulk.progress-interval:100000}") long progressInterval) {
+        this.userMapper = userMapper;
+        this.messageMapper = messageMapper;
+        this.messageArchive = messageArchive;
+        this.messageEventBus = messageEventBus;
+        this.userNameCache = userNameCache;
+        this.userNameBloomFilter = userNameBloomFilter;
+        this.batchSqlSession = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.jsonFactory = objectMapper.getFactory();
+        // the journal is appended to directly, its appends are already sequential and in memory
+        this.journalBackend = "journal".equals(storageBackend);
+        this.admins = new HashSet<>(Arrays.asList(admins));
+        this.batchSize = batchSize;
+        this.chunkSize = Math.max(batchSize, chunkSize);
+        this.progressInterval = progressInterval;
+    }
+
+    /**
+     * Users allowed to call the bulk endpoints, from {@code chat.bulk.admins}.
+     */
+    public boolean isAdmin(String userName) {
+        return admins.contains(userName);
+    }
+
+    /**
+     * Writes every user, then every archived message room by room, then the messages of MESSAGES in id order.
+     * Returns the number of rows written. The archiver waits until the export is done, so no message moves
+     * between the two reads, and rows that are in both after an interrupted move are written once.
+     */
+    @Transactional(readOnly = true)
+    public long export(OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        long rows = 0;
+        JsonGenerator generator = jsonFactory.createGenerator(out);
+        generator.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+        generator.setRootValueSeparator(null);
+        try (Cursor<User> users = userMapper.streamAllUsers()) {
+            for (User user : users) {
+                userNameCache.remember(user.getUserId(), user.getUserName());
+                writeUser(generator, user);
+                progress(++rows, start, "Exported");
+            }
+        }
+        Lock noMoves = messageArchive.getMoveLock().readLock();
+        noMoves.lock();
+        try {
+            Map<String, Integer> archivedSeqs = messageArchive.getLastRoomSeqs();
+            for (ChatMessage chatMessage : userNameCache.named(messageArchive.streamAllMessages())) {
+                writeMessage(generator, chatMessage);
+                progress(++rows, start, "Exported");
+            }
+            try (Cursor<ChatMessage> messages = messageMapper.streamAllMessages()) {
+                for (ChatMessage chatMessage : userNameCache.named(messages)) {
+                    Integer archivedSeq = archivedSeqs.get(chatMessage.getRoom());
+                    if (archivedSeq != null && chatMessage.getRoomSeq() <= archivedSeq) {
+                        continue;
+                    }
+                    writeMessage(generator, chatMessage);
+                    progress(++rows, start, "Exported");
+                }
+            }
+        } finally {
+            noMoves.unlock();
+        }
+        generator.close();
+        logger.info("Exported " + rows + " rows in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        return rows;
+    }
+
+    /**
+     * Reads an export, gzipped or not, and inserts what it holds. Messages keep their rooms and sequence numbers,
+     * so the message store has to be empty.
+     */
+    public ImportResult importFrom(InputStream in) throws IOException {
+        if (!messageMapper.getLatestMessages(1).isEmpty() || !messageArchive.isEmpty()) {
+            throw new BulkImportException("Messages can only be imported into an empty message store");
+        }
+
+        long start = System.nanoTime();
+        List<User> users = new ArrayList<>(batchSize);
+        List<ChatMessage> messages = new ArrayList<>(batchSize);
+        long userCount = 0;
+        long messageCount = 0;
+        try (JsonParser parser = jsonFactory.createParser(decompress(in))) {
+            while (parser.nextToken() != null) {
+                if (parser.currentToken() != JsonToken.START_OBJECT || parser.nextToken() != JsonToken.FIELD_NAME
+                        || !"kind".equals(parser.getCurrentName())) {
+                    throw new BulkImportException("Expected an object starting with \"kind\" at line "
+                            + parser.getCurrentLocation().getLineNr());
+                }
+                String kind = parser.nextTextValue();
+                if ("user".equals(kind)) {
+                    users.add(readUser(parser));
+                    userCount++;
+                } else if ("message".equals(kind)) {
+                    messages.add(readMessage(parser));
+                    messageCount++;
+                } else {
+                    throw new BulkImportException("Unknown kind " + kind + " at line "
+                            + parser.getCurrentLocation().getLineNr());
+                }
+
+                if (users.size() + messages.size() == chunkSize) {
+                    writeChunk(users, messages);
+                }
+                progress(userCount + messageCount, start, "Imported");
+            }
+        } catch (JsonParseException e) {
+            throw new BulkImportException("Malformed import: " + e.getOriginalMessage(), e);
+        }
+        writeChunk(users, messages);
+
+        ImportResult result = new ImportResult(userCount, messageCount, (System.nanoTime() - start) / 1_000_000);
+        logger.info("Imported " + userCount + " users and " + messageCount + " messages in " + result.getMillis()
+                + " ms (" + result.getRowsPerSecond() + " rows/s)");
+        return result;
+    }
+
+    /**
+     * Inserts one chunk, users first, flushing a JDBC batch every {@code batchSize} rows. Messages are written
+     * in a second transaction once their authors' ids can be looked up. Readers on this and other nodes hear
+     * about the messages through the event bus, like any other insert.
+     */
+    private void writeChunk(List<User> users, List<ChatMessage> messages) {
+        if (!users.isEmpty()) {
+            transactionTemplate.executeWithoutResult(status -> {
+                UserMapper batchUserMapper = batchSqlSession.getMapper(UserMapper.class);
+                insertBatched(users, batchUserMapper::insert);
+            });
+            for (User user : users) {
+                userNameCache.remember(user.getUserId(), user.getUserName());
+                userNameBloomFilter.add(user.getUserName());
+            }
+            users.clear();
+        }
+        if (messages.isEmpty()) {
+            return;
+        }
+
+        for (ChatMessage chatMessage : messages) {
+            Integer userId = userNameCache.getUserId(chatMessage.getUserName());
+            if (userId == null) {
+                throw new BulkImportException("Message " + chatMessage.getRoom() + "/" + chatMessage.getRoomSeq()
+                        + " is by unknown user " + chatMessage.getUserName());
+            }
+            chatMessage.setUserId(userId);
+            chatMessage.setUserName(userNameCache.getUserName(userId));
+        }
+        if (journalBackend) {
+            messages.forEach(messageMapper::insert);
+        } else {
+            transactionTemplate.executeWithoutResult(status -> {
+                MessageMapper batchMessageMapper = batchSqlSession.getMapper(MessageMapper.class);
+                insertBatched(messages, batchMessageMapper::insert);
+            });
+        }
+        messages.forEach(messageEventBus::publish);
+        messages.clear();
+    }
+
+    private <T> void insertBatched(List<T> rows, Consumer<T> insert) {
+        int pending = 0;
+        for (T row : rows) {
+            insert.accept(row);
+            if (++pending % batchSize == 0) {
+                batchSqlSession.flushStatements();
+            }
+        }
+        // executes the last JDBC batch and copies the generated keys back onto the rows
+        batchSqlSession.flushStatements();
+    }
+
+    private void progress(long rows, long start, String action) {
+        if (rows % progressInterval == 0) {
+            long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+            logger.info(action + " " + rows + " rows so far (" + rows * 1000 / millis + " rows/s)");
+        }
+    }
+
+    private static InputStream decompress(InputStream in) throws IOException {
+        InputStream buffered = new BufferedInputStream(in, 64 * 1024);
+        buffered.mark(2);
+        int first = buffered.read();
+        int second = buffered.read();
+        buffered.reset();
+        if (first == 0x1f && second == 0x8b) {
+            return new GZIPInputStream(buffered, 64 * 1024);
+        }
+        return buffered;
+    }
+
+    private static void writeUser(JsonGenerator generator, User user) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("kind", "user");
+        generator.writeStringField("userName", user.getUserName());
+        generator.writeStringField("salt", user.getSalt());
+        generator.writeStringField("password", user.getPassword());
+        generator.writeStringField("firstName", user.getFirstName());
+        generator.writeStringField("lastName", user.getLastName());
+        generator.writeNumberField("hashIterations", user.getHashIterations());
+        generator.writeNumberField("hashKeyLength", user.getHashKeyLength());
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    private static void writeMessage(JsonGenerator generator, ChatMessage chatMessage) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("kind", "message");
+        generator.writeStringField("room", chatMessage.getRoom());
+        generator.writeNumberField("roomSeq", chatMessage.getRoomSeq());
+        generator.writeStringField("userName", chatMessage.getUserName());
+        generator.writeStringField("messageText", chatMessage.getMessageText());
+        if (chatMessage.getMessageType() != null) {
+            generator.writeStringField("messageType", chatMessage.getMessageType().name());
+        }
+        if (chatMessage.getCreatedAt() != null) {
+            generator.writeNumberField("createdAt", chatMessage.getCreatedAt().toEpochMilli());
+        }
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    private static User readUser(JsonParser parser) throws IOException {
+        User user = new User();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "userName":
+                    user.setUserName(parser.getValueAsString());
+                    break;
+                case "salt":
+                    user.setSalt(parser.getValueAsString());
+                    break;
+                case "password":
+                    user.setPassword(parser.getValueAsString());
+                    break;
+                case "firstName":
+                    user.setFirstName(parser.getValueAsString());
+                    break;
+                case "lastName":
+                    user.setLastName(parser.getValueAsString());
+                    break;
+                case "hashIterations":
+                    user.setHashIterations(parser.getValueAsInt());
+                    break;
+                case "hashKeyLength":
+                    user.setHashKeyLength(parser.getValueAsInt());
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+            }
+        }
+        // users created by the message author migration have no password, like they have none in USERS
+        if (user.getUserName() == null || user.getHashIterations() == 0) {
+            throw new BulkImportException("Incomplete user at line " + parser.getCurrentLocation().getLineNr());
+        }
+        return user;
+    }
+
+    private static ChatMessage readMessage(JsonParser parser) throws IOException {
+        ChatMessage chatMessage = new ChatMessage();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "room":
+                    chatMessage.setRoom(parser.getValueAsString());
+                    break;
+                case "roomSeq":
+                    chatMessage.setRoomSeq(parser.getValueAsInt());
+                    break;
+                case "userName":
+                    chatMessage.setUserName(parser.getValueAsString());
+                    break;
+                case "messageText":
+                    chatMessage.setMessageText(parser.getValueAsString());
+                    break;
+                case "messageType":
+                    try {
+                        String messageType = parser.getValueAsString();
+                        chatMessage.setMessageType(messageType == null ? null : MessageType.valueOf(messageType));
+                    } catch (IllegalArgumentException e) {
+                        throw new BulkImportException("Unknown message type at line "
+                                + parser.getCurrentLocation().getLineNr());
+                    }
+                    break;
+                case "createdAt":
+                    chatMessage.setCreatedAt(Instant.ofEpochMilli(parser.getValueAsLong()));
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+            }
+        }
+        if (chatMessage.getRoom() == null || chatMessage.getRoomSeq() == null || chatMessage.getUserName() == null
+                || chatMessage.getMessageText() == null) {
+            throw new BulkImportException("Incomplete message at line " + parser.getCurrentLocation().getLineNr());
+        }
+        return chatMessage;
+    }
+}
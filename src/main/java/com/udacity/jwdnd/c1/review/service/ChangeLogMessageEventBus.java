@@ -0,0 +1,166 @@
+package com.udacity.jwdnd.c1.review.service;
+
+import com.udacity.jwdnd.c1.review.mapper.MessageMapper;
+import com.udacity.jwdnd.c1.review.model.ChatMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Multi-node bus that uses the MESSAGES table as its change log. Local messages are delivered right away; a
+ * poller reads {@code messageid > watermark} in keyset batches and delivers whatever other nodes inserted.
+ * <p>
+ * Ids are handed out before commit, so a poll can see id n + 1 while n is still in flight. Such gaps are
+ * remembered and only the missing ids are looked up again on later polls, while reading carries on after the
+ * newest id seen. The watermark only moves past ids that were delivered, or that stayed missing for
+ * {@code gap-timeout-ms}; failed inserts burn ids, so most gaps never fill.
+ */
+@Service
+@ConditionalOnProperty(name = "chat.event-bus.type", havingValue = "change-log")
+public class ChangeLogMessageEventBus implements MessageEventBus {
+    private Logger logger = LoggerFactory.getLogger(ChangeLogMessageEventBus.class);
+
+    private MessageMapper messageMapper;
+    private List<Consumer<ChatMessage>> listeners = new CopyOnWriteArrayList<>();
+    private NavigableSet<Integer> delivered = new ConcurrentSkipListSet<>();
+    private ScheduledExecutorService poller;
+    private long pollIntervalMillis;
+    private int batchSize;
+    private long gapTimeoutNanos;
+
+    // only touched by the poller thread
+    private volatile int watermark;
+    private int readCursor;
+    private TreeMap<Integer, Long> gaps = new TreeMap<>();
+
+    public ChangeLogMessageEventBus(MessageMapper messageMapper,
+                                    @Value("${chat.event-bus.change-log.poll-interval-ms:200}") long pollIntervalMillis,
+                                    @Value("${chat.event-bus.change-log.batch-size:500}") int batchSize,
+                                    @Value("${chat.event-bus.change-log.gap-timeout-ms:5000}") long gapTimeoutMillis) {
+        this.messageMapper = messageMapper;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.batchSize = batchSize;
+        this.gapTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(gapTimeoutMillis);
+        this.poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-change-log");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PostConstruct
+    public void start() {
+        // local state is loaded from the database at startup, so only changes after this point matter
+        List<ChatMessage> latest = messageMapper.getLatestMessages(1);
+        watermark = latest.isEmpty() ? 0 : latest.get(0).getMessageId();
+        readCursor = watermark;
+        poller.scheduleWithFixedDelay(this::poll, pollIntervalMillis, pollIntervalMillis, TimeUnit.MILLISECONDS);
+        logger.info("Following the message change log from id " + watermark);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        poller.shutdownNow();
+    }
+
+    @Override
+    public void publish(ChatMessage chatMessage) {
+        if (delivered.add(chatMessage.getMessageId())) {
+            deliver(chatMessage);
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<ChatMessage> listener) {
+        listeners.add(listener);
+    }
+
+    public int getWatermark() {
+        return watermark;
+    }
+
+    void poll() {
+        try {
+            long now = System.nanoTime();
+            gaps.keySet().removeIf(delivered::contains);
+            if (!gaps.isEmpty()) {
+                for (ChatMessage chatMessage : messageMapper.getMessagesByIds(new ArrayList<>(gaps.keySet()))) {
+                    gaps.remove(chatMessage.getMessageId());
+                    received(chatMessage);
+                }
+            }
+
+            List<ChatMessage> batch;
+            do {
+                batch = messageMapper.getMessagesAfter(readCursor, batchSize);
+                for (ChatMessage chatMessage : batch) {
+                    int messageId = chatMessage.getMessageId();
+                    for (int missing = readCursor + 1; missing < messageId; missing++) {
+                        if (!delivered.contains(missing)) {
+                            gaps.put(missing, now);
+                        }
+                    }
+                    received(chatMessage);
+                    readCursor = messageId;
+                }
+            } while (batch.size() == batchSize);
+            advanceWatermark(now);
+        } catch (RuntimeException e) {
+            logger.warn("Polling the message change log failed: " + e.getMessage());
+        }
+    }
+
+    private void received(ChatMessage chatMessage) {
+        if (delivered.add(chatMessage.getMessageId())) {
+            deliver(chatMessage);
+        }
+    }
+
+    private void advanceWatermark(long now) {
+        int next = watermark + 1;
+        while (true) {
+            if (delivered.contains(next)) {
+                next++;
+                continue;
+            }
+            Long missingSince = gaps.get(next);
+            if (missingSince != null && now - missingSince >= gapTimeoutNanos) {
+                logger.debug("Giving up on message id " + next + ", it never committed");
+                gaps.remove(next);
+                next++;
+                continue;
+            }
+            break;
+        }
+        watermark = next - 1;
+        // local messages can take the watermark past what we have read
+        readCursor = Math.max(readCursor, watermark);
+        delivered.headSet(watermark, true).clear();
+        gaps.headMap(watermark, true).clear();
+    }
+
+    private void deliver(ChatMessage chatMessage) {
+        for (Consumer<ChatMessage> listener : listeners) {
+            try {
+                listener.accept(chatMessage);
+            } catch (RuntimeException e) {
+                logger.warn("Message listener failed for message " + chatMessage.getMessageId(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.udacity.jwdnd.c1.review.service;
+
+import com.udacity.jwdnd.c1.review.model.ChatMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * In-memory state of one room: the last sequence number handed out, the newest one readers can already see
+ * and the ring of its newest messages. Sequence numbers are only assigned while holding the room's lock stripe
+ * in {@link MessageService}.
+ * <p>
+ * Messages can become readable out of sequence order, e.g. another node's seq n arrives through the event bus
+ * after our own n + 1. The visible sequence number is therefore the highest one below which nothing is
+ * missing, and messages are handed to {@code onVisible} in that order. A sequence number that was handed back,
+ * or that stays missing for {@code gapTimeoutMillis}, is skipped.
+ */
+public class ChatRoom {
+    private Logger logger = LoggerFactory.getLogger(ChatRoom.class);
+
+    private String name;
+    private AtomicInteger lastSeq = new AtomicInteger();
+    private volatile int visibleSeq;
+    private volatile long lastModified;
+    private RecentMessageBuffer recentMessages;
+    private volatile boolean loaded;
+    private long gapTimeoutNanos;
+    private Consumer<ChatMessage> onVisible;
+
+    // guarded by this; messages above visibleSeq waiting for the ones before them
+    private TreeMap<Integer, ChatMessage> waiting = new TreeMap<>();
+    private NavigableSet<Integer> released = new TreeSet<>();
+    private volatile long gapSince;
+
+    public ChatRoom(String name, int recentBufferCapacity, long gapTimeoutMillis, Consumer<ChatMessage> onVisible) {
+        this.name = name;
+        this.recentMessages = new RecentMessageBuffer(recentBufferCapacity);
+        this.gapTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(gapTimeoutMillis);
+        this.onVisible = onVisible;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getLastSeq() {
+        return lastSeq.get();
+    }
+
+    public int nextSeq() {
+        return lastSeq.incrementAndGet();
+    }
+
+    public void advanceSeq(int seq) {
+        lastSeq.accumulateAndGet(seq, Math::max);
+    }
+
+    /**
+     * Hands back a sequence number whose message was never stored. It is handed out again if it is still the
+     * last one, otherwise readers stop waiting for it.
+     */
+    public synchronized void releaseSeq(int seq) {
+        if (!lastSeq.compareAndSet(seq, seq - 1) && seq > visibleSeq) {
+            released.add(seq);
+            advance(System.nanoTime());
+        }
+    }
+
+    public int getVisibleSeq() {
+        if (gapSince != 0) {
+            synchronized (this) {
+                advance(System.nanoTime());
+            }
+        }
+        return visibleSeq;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Records that a stored message can now be read; with write-behind this trails {@link #nextSeq()}.
+     */
+    public synchronized void messageVisible(ChatMessage chatMessage) {
+        recentMessages.add(chatMessage);
+        lastModified = System.currentTimeMillis();
+        if (chatMessage.getRoomSeq() <= visibleSeq) {
+            // we gave up on it already, or it arrived before the room was loaded
+            onVisible.accept(chatMessage);
+            return;
+        }
+        waiting.put(chatMessage.getRoomSeq(), chatMessage);
+        advance(System.nanoTime());
+    }
+
+    public RecentMessageBuffer getRecentMessages() {
+        return recentMessages;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public synchronized void markLoaded() {
+        recentMessages.markWarm();
+        visibleSeq = Math.max(visibleSeq, lastSeq.get());
+        waiting.headMap(visibleSeq, true).clear();
+        released.headSet(visibleSeq, true).clear();
+        advance(System.nanoTime());
+        lastModified = System.currentTimeMillis();
+        loaded = true;
+    }
+
+    private void advance(long now) {
+        while (true) {
+            int next = visibleSeq + 1;
+            ChatMessage chatMessage = waiting.remove(next);
+            if (chatMessage != null) {
+                visibleSeq = next;
+                gapSince = 0;
+                onVisible.accept(chatMessage);
+            } else if (released.remove(next)) {
+                visibleSeq = next;
+                gapSince = 0;
+            } else if (waiting.isEmpty()) {
+                gapSince = 0;
+                return;
+            } else if (gapSince == 0) {
+                gapSince = now;
+                return;
+            } else if (now - gapSince >= gapTimeoutNanos) {
+                int skipTo = waiting.firstKey() - 1;
+                logger.debug("Giving up on sequence numbers " + next + " to " + skipTo + " of room " + name);
+                visibleSeq = skipTo;
+                released.headSet(skipTo, true).clear();
+                gapSince = 0;
+            } else {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.udacity.jwdnd.c1.review.service;
+
+import com.udacity.jwdnd.c1.review.archive.MessageArchive;
+import com.udacity.jwdnd.c1.review.mapper.MessageMapper;
+import com.udacity.jwdnd.c1.review.model.ChatMessage;
+import com.udacity.jwdnd.c1.review.model.ChatStats;
+import com.udacity.jwdnd.c1.review.model.MessageType;
+import org.apache.ibatis.cursor.Cursor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Message counts kept up to date as messages are stored, so reading them never touches MESSAGES. Totals are
+ * {@link LongAdder}s; posts per minute come from per-second buckets over the last
+ * {@value #WINDOW_SECONDS} seconds. The buckets are striped by thread, like a LongAdder, so concurrent posters
+ * do not fight over the current second. Everything is rebuilt from one streaming pass over the archive and the
+ * mapper at startup.
+ */
+@Service
+public class ChatStatistics {
+    static final int WINDOW_SECONDS = 15 * 60;
+    private static final int[] WINDOW_MINUTES = {1, 5, 15};
+
+    private Logger logger = LoggerFactory.getLogger(ChatStatistics.class);
+
+    private MessageMapper messageMapper;
+    private MessageArchive messageArchive;
+    private UserNameCache userNameCache;
+    private TransactionTemplate transactionTemplate;
+    private LongAdder totalMessages = new LongAdder();
+    private Map<MessageType, LongAdder> messagesByType = new EnumMap<>(MessageType.class);
+    private ConcurrentMap<Integer, LongAdder> messagesByUser = new ConcurrentHashMap<>();
+    // each slot packs the epoch second it counts (high 32 bits) and the count (low 32 bits)
+    private AtomicLongArray[] secondBuckets;
+
+    public ChatStatistics(MessageMapper messageMapper, MessageArchive messageArchive, UserNameCache userNameCache,
+                          PlatformTransactionManager transactionManager) {
+        this.messageMapper = messageMapper;
+        this.messageArchive = messageArchive;
+        this.userNameCache = userNameCache;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        for (MessageType messageType : MessageType.values()) {
+            messagesByType.put(messageType, new LongAdder());
+        }
+        int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+        this.secondBuckets = new AtomicLongArray[stripes];
+        for (int i = 0; i < stripes; i++) {
+            secondBuckets[i] = new AtomicLongArray(WINDOW_SECONDS);
+        }
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        long start = System.nanoTime();
+        messageArchive.streamAllMessages().forEach(this::record);
+        // the cursor needs its SqlSession open until the last row is read
+        transactionTemplate.executeWithoutResult(status -> {
+            try (Cursor<ChatMessage> cursor = messageMapper.streamAllMessages()) {
+                cursor.forEach(this::record);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        logger.info("Rebuilt statistics of " + totalMessages.sum() + " messages in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    public void record(ChatMessage chatMessage) {
+        totalMessages.increment();
+        if (chatMessage.getMessageType() != null) {
+            messagesByType.get(chatMessage.getMessageType()).increment();
+        }
+        if (chatMessage.getUserId() != null) {
+            messagesByUser.computeIfAbsent(chatMessage.getUserId(), userId -> new LongAdder()).increment();
+        }
+        if (chatMessage.getCreatedAt() != null) {
+            recordPost(chatMessage.getCreatedAt().getEpochSecond(), Instant.now().getEpochSecond());
+        }
+    }
+
+    public long getTotalMessages() {
+        return totalMessages.sum();
+    }
+
+    public long getMessages(MessageType messageType) {
+        return messagesByType.get(messageType).sum();
+    }
+
+    public long getMessagesByUser(int userId) {
+        LongAdder count = messagesByUser.get(userId);
+        return count == null ? 0 : count.sum();
+    }
+
+    public int getTrackedUsers() {
+        return messagesByUser.size();
+    }
+
+    /**
+     * Average posts per minute over the last {@code minutes} minutes, at most {@value #WINDOW_SECONDS} / 60.
+     */
+    public double getPostsPerMinute(int minutes) {
+        return getPostsPerMinute(minutes, Instant.now().getEpochSecond());
+    }
+
+    public ChatStats getStats(String userName) {
+        Map<MessageType, Long> byType = new EnumMap<>(MessageType.class);
+        for (MessageType messageType : MessageType.values()) {
+            byType.put(messageType, getMessages(messageType));
+        }
+        long now = Instant.now().getEpochSecond();
+        Map<Integer, Double> postsPerMinute = new LinkedHashMap<>();
+        for (int minutes : WINDOW_MINUTES) {
+            postsPerMinute.put(minutes, getPostsPerMinute(minutes, now));
+        }
+        Integer userId = userName == null ? null : userNameCache.getUserId(userName);
+        return new ChatStats(getTotalMessages(), byType, postsPerMinute, userName,
+                userId == null ? 0 : getMessagesByUser(userId));
+    }
+
+    void recordPost(long epochSecond, long nowSecond) {
+        if (epochSecond <= nowSecond - WINDOW_SECONDS || epochSecond > nowSecond + 60) {
+            return;
+        }
+        AtomicLongArray buckets = secondBuckets[(int) Thread.currentThread().getId() & (secondBuckets.length - 1)];
+        int slot = (int) Math.floorMod(epochSecond, (long) WINDOW_SECONDS);
+        long second = epochSecond & 0xFFFFFFFFL;
+        while (true) {
+            long current = buckets.get(slot);
+            long currentSecond = current >>> 32;
+            long next;
+            if (currentSecond == second) {
+                next = current + 1;
+            } else if (currentSecond < second) {
+                next = (second << 32) | 1;
+            } else {
+                // the slot already counts a newer second, this post has fallen out of the window
+                return;
+            }
+            if (buckets.compareAndSet(slot, current, next)) {
+                return;
+            }
+        }
+    }
+
+    double getPostsPerMinute(int minutes, long nowSecond) {
+        int seconds = Math.min(minutes * 60, WINDOW_SECONDS);
+        long posts = 0;
+        for (AtomicLongArray buckets : secondBuckets) {
+            for (long second = nowSecond - seconds + 1; second <= nowSecond; second++) {
+                long current = buckets.get((int) Math.floorMod(second, (long) WINDOW_SECONDS));
+                if (current >>> 32 == (second & 0xFFFFFFFFL)) {
+                    posts += current & 0xFFFFFFFFL;
+                }
+            }
+        }
+        return posts / (seconds / 60.0);
+    }
+}
@@ -2,31 +2,264 @@ package com.udacity.jwdnd.c1.review.service;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.stereotype.Component;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.PBEKeySpec;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.KeySpec;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * PBKDF2 hashing runs on its own bounded pool sized to the CPU, so a login or signup storm saturates the
+ * hashing threads instead of every servlet thread. When the pool's queue is full callers fail fast with a
+ * {@link HashingUnavailableException}.
+ * <p>
+ * The iteration count for new hashes is calibrated at startup so that one hash takes about
+ * {@code chat.hash.target-ms} on this machine. Every stored hash keeps the cost it was made with, and callers
+ * pass that cost back in to verify it.
+ */
 @Service
 public class HashService {
+    public static final int LEGACY_ITERATIONS = 5000;
+    public static final int LEGACY_KEY_LENGTH = 128;
+
+    private static final int CALIBRATION_PROBE_ITERATIONS = 10000;
+    private static final int CALIBRATION_SAMPLES = 5;
+    // stored hashes down to this share of the target cost are kept, as calibration is a noisy measurement
+    private static final double REHASH_BELOW = 0.8;
+
     private Logger logger = LoggerFactory.getLogger(HashService.class);
 
+    private ThreadPoolExecutor hashExecutor;
+    private long timeoutMillis;
+    private long targetMillis;
+    private int minIterations;
+    private int maxIterations;
+    private int keyLength;
+    private volatile int targetIterations;
+    private ThreadLocal<SecretKeyFactory> keyFactories = ThreadLocal.withInitial(HashService::newKeyFactory);
+
+    private LongAdder completedHashes = new LongAdder();
+    private LongAdder hashNanos = new LongAdder();
+    private LongAdder rejectedHashes = new LongAdder();
+
+    public HashService(@Value("${chat.hash.threads:0}") int threads,
+                       @Value("${chat.hash.queue-limit:64}") int queueLimit,
+                       @Value("${chat.hash.timeout-ms:10000}") long timeoutMillis,
+                       @Value("${chat.hash.target-ms:50}") long targetMillis,
+                       @Value("${chat.hash.min-iterations:5000}") int minIterations,
+                       @Value("${chat.hash.max-iterations:2000000}") int maxIterations,
+                       @Value("${chat.hash.key-length:256}") int keyLength) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCount = new AtomicInteger();
+        this.hashExecutor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueLimit), runnable -> {
+                    Thread thread = new Thread(runnable, "password-hash-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.timeoutMillis = timeoutMillis;
+        this.targetMillis = targetMillis;
+        this.minIterations = minIterations;
+        this.maxIterations = Math.max(minIterations, maxIterations);
+        this.keyLength = keyLength;
+        this.targetIterations = minIterations;
+    }
+
+    /**
+     * Times a few hashes at a fixed probe cost and scales the iteration count linearly to the latency budget.
+     * A target of 0 skips calibration and uses {@code min-iterations}.
+     */
+    @PostConstruct
+    public void calibrate() {
+        if (targetMillis <= 0) {
+            logger.info("Password hash calibration disabled, using " + targetIterations + " iterations");
+            return;
+        }
+
+        // the first runs include JIT warm-up, so only the fastest sample counts
+        long bestNanos = Long.MAX_VALUE;
+        for (int i = 0; i < CALIBRATION_SAMPLES; i++) {
+            long start = System.nanoTime();
+            pbkdf2("calibration-password", "calibration-salt", CALIBRATION_PROBE_ITERATIONS, keyLength);
+            bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+        }
+
+        double iterationsPerMilli = CALIBRATION_PROBE_ITERATIONS / (bestNanos / 1_000_000.0);
+        long iterations = Math.round(iterationsPerMilli * targetMillis / 1000.0) * 1000;
+        targetIterations = (int) Math.max(minIterations, Math.min(maxIterations, iterations));
+        logger.info("Password hashes use " + targetIterations + " iterations for a " + targetMillis
+                + " ms budget (probe: " + CALIBRATION_PROBE_ITERATIONS + " iterations in "
+                + TimeUnit.NANOSECONDS.toMicros(bestNanos) + " us)");
+    }
+
+    public int getTargetIterations() {
+        return targetIterations;
+    }
+
+    public int getKeyLength() {
+        return keyLength;
+    }
+
+    /**
+     * True if a hash made with this cost is clearly weaker than the current target and should be redone. Hashes
+     * at or above the target are never rehashed, so nodes that calibrate differently don't rewrite them back
+     * and forth.
+     */
+    public boolean needsRehash(int iterations, int keyLength) {
+        return iterations < targetIterations * REHASH_BELOW || keyLength < this.keyLength;
+    }
+
+    /**
+     * Hashes at the current target cost, for new passwords.
+     */
     public String getHashedValue(String data, String salt) {
-        byte[] hashedValue = null;
+        return getHashedValue(data, salt, targetIterations, keyLength);
+    }
+
+    public String getHashedValue(String data, String salt, int iterations, int keyLength) {
+        Future<byte[]> hashedValue;
+        try {
+            hashedValue = hashExecutor.submit(() -> hash(data, salt, iterations, keyLength));
+        } catch (RejectedExecutionException e) {
+            rejectedHashes.increment();
+            throw new HashingUnavailableException("Too many logins and signups in progress, please try again shortly.");
+        }
+
+        try {
+            return Base64.getEncoder().encodeToString(hashedValue.get(timeoutMillis, TimeUnit.MILLISECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            hashedValue.cancel(true);
+            throw new HashingUnavailableException("Password hashing was interrupted.");
+        } catch (TimeoutException e) {
+            hashedValue.cancel(true);
+            throw new HashingUnavailableException("Password hashing timed out, please try again shortly.");
+        } catch (ExecutionException e) {
+            logger.error(e.getCause().getMessage());
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
+    }
 
-        KeySpec spec = new PBEKeySpec(data.toCharArray(), salt.getBytes(), 5000, 128);
+    /**
+     * Hashes on the pool and completes the future there, for async request handlers that must not wait for it.
+     * Fails the future with a {@link HashingUnavailableException} where {@link #getHashedValue} would throw one.
+     */
+    public CompletableFuture<String> hashAsync(String data, String salt, int iterations, int keyLength) {
+        CompletableFuture<String> hashedValue = new CompletableFuture<>();
         try {
-            SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1");
-            hashedValue = factory.generateSecret(spec).getEncoded();
-        } catch (InvalidKeySpecException | NoSuchAlgorithmException e) {
-            logger.error(e.getMessage());
+            hashExecutor.execute(() -> {
+                try {
+                    hashedValue.complete(
+                            Base64.getEncoder().encodeToString(hash(data, salt, iterations, keyLength)));
+                } catch (RuntimeException e) {
+                    hashedValue.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejectedHashes.increment();
+            return CompletableFuture.failedFuture(new HashingUnavailableException(
+                    "Too many logins and signups in progress, please try again shortly."));
         }
+        return hashedValue.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS).exceptionally(e -> {
+            if (e instanceof TimeoutException) {
+                throw new HashingUnavailableException("Password hashing timed out, please try again shortly.");
+            }
+            throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+        });
+    }
+
+    /**
+     * Hashes on the pool without waiting, for work nobody is blocked on. Returns {@code null} instead of queueing
+     * when the pool is already half busy, so background work never crowds out logins.
+     */
+    public CompletableFuture<String> hashInBackground(String data, String salt, int iterations, int keyLength) {
+        if (hashExecutor.getQueue().size() > hashExecutor.getQueue().remainingCapacity()) {
+            return null;
+        }
+        CompletableFuture<String> hashedValue = new CompletableFuture<>();
+        try {
+            hashExecutor.execute(() -> {
+                try {
+                    hashedValue.complete(
+                            Base64.getEncoder().encodeToString(hash(data, salt, iterations, keyLength)));
+                } catch (RuntimeException e) {
+                    hashedValue.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+        return hashedValue;
+    }
+
+    public int getQueueDepth() {
+        return hashExecutor.getQueue().size();
+    }
+
+    public int getActiveHashes() {
+        return hashExecutor.getActiveCount();
+    }
+
+    public long getCompletedHashes() {
+        return completedHashes.sum();
+    }
+
+    public long getTotalHashNanos() {
+        return hashNanos.sum();
+    }
+
+    public long getRejectedHashes() {
+        return rejectedHashes.sum();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hashExecutor.shutdownNow();
+    }
+
+    private byte[] hash(String data, String salt, int iterations, int keyLength) {
+        long start = System.nanoTime();
+        byte[] hashedValue = pbkdf2(data, salt, iterations, keyLength);
+        hashNanos.add(System.nanoTime() - start);
+        completedHashes.increment();
+        return hashedValue;
+    }
 
-        return Base64.getEncoder().encodeToString(hashedValue);
+    private byte[] pbkdf2(String data, String salt, int iterations, int keyLength) {
+        char[] password = data.toCharArray();
+        KeySpec spec = new PBEKeySpec(password, salt.getBytes(), iterations, keyLength);
+        try {
+            return keyFactories.get().generateSecret(spec).getEncoded();
+        } catch (InvalidKeySpecException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            Arrays.fill(password, '\0');
+        }
+    }
+
+    private static SecretKeyFactory newKeyFactory() {
+        try {
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 }
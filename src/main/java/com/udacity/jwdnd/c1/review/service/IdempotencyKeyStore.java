@@ -0,0 +1,134 @@
+package com.udacity.jwdnd.c1.review.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the idempotency keys of recent chat form submissions, so a refreshed or retried POST is absorbed
+ * instead of storing its message again. Keys are scoped to their user and expire after
+ * {@code chat.idempotency.ttl-ms}. Expired keys are swept out like idle {@link RateLimiter} buckets; when
+ * {@code chat.idempotency.max-keys} are live anyway, further submissions go through untracked, which at worst
+ * lets a retry of one of them be stored twice. A full store is swept again only once its oldest key has
+ * expired, so being full does not turn every submission into a sweep.
+ */
+@Service
+public class IdempotencyKeyStore {
+    private ConcurrentMap<String, Submission> submissions = new ConcurrentHashMap<>();
+    private long ttl;
+    private int maxKeys;
+    private AtomicLong nextEviction;
+    private AtomicLong nextEvictionWhenFull;
+    private Counter duplicates;
+    private Counter untracked;
+
+    public IdempotencyKeyStore(MeterRegistry meterRegistry,
+                               @Value("${chat.idempotency.ttl-ms:600000}") long ttlMillis,
+                               @Value("${chat.idempotency.max-keys:100000}") int maxKeys) {
+        this.ttl = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.maxKeys = maxKeys;
+        this.nextEviction = new AtomicLong(System.nanoTime() + ttl);
+        this.nextEvictionWhenFull = new AtomicLong(System.nanoTime());
+        this.duplicates = meterRegistry.counter("chat.post.duplicates");
+        this.untracked = meterRegistry.counter("chat.post.untracked");
+    }
+
+    /**
+     * Claims a key for a submission with the given content. A key that is claimed again with the same content
+     * before it expires is a duplicate; with different content it is a new submission, e.g. from a second tab
+     * showing the same cached page.
+     *
+     * @return {@code true} if the submission should be processed, {@code false} if it is a duplicate
+     */
+    public boolean claim(String userName, String idempotencyKey, String content) {
+        if (idempotencyKey == null || idempotencyKey.isEmpty()) {
+            return true;
+        }
+        long now = System.nanoTime();
+        evictExpired(now, nextEviction);
+        if (submissions.size() >= maxKeys) {
+            evictExpired(now, nextEvictionWhenFull);
+            if (submissions.size() >= maxKeys) {
+                untracked.increment();
+                return true;
+            }
+        }
+
+        String key = userName + '\n' + idempotencyKey;
+        Submission submission = new Submission(digest(content), now + ttl);
+        while (true) {
+            Submission previous = submissions.putIfAbsent(key, submission);
+            if (previous == null) {
+                return true;
+            }
+            if (MessageDigest.isEqual(previous.contentDigest, submission.contentDigest)
+                    && now - previous.expiresAt < 0) {
+                duplicates.increment();
+                return false;
+            }
+            if (submissions.replace(key, previous, submission)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Forgets a claimed key whose submission failed, so that retrying it is not mistaken for a duplicate.
+     */
+    public void release(String userName, String idempotencyKey) {
+        if (idempotencyKey != null && !idempotencyKey.isEmpty()) {
+            submissions.remove(userName + '\n' + idempotencyKey);
+        }
+    }
+
+    public int getTrackedKeys() {
+        return submissions.size();
+    }
+
+    // amortized like RateLimiter's sweep: at most one caller per ttl pays for it, or per expiry once full
+    private void evictExpired(long now, AtomicLong next) {
+        long due = next.get();
+        if (now - due < 0 || !next.compareAndSet(due, now + ttl)) {
+            return;
+        }
+        long oldestExpiry = now + ttl;
+        for (Map.Entry<String, Submission> entry : submissions.entrySet()) {
+            Submission submission = entry.getValue();
+            if (now - submission.expiresAt >= 0) {
+                submissions.remove(entry.getKey(), submission);
+            } else if (submission.expiresAt - oldestExpiry < 0) {
+                oldestExpiry = submission.expiresAt;
+            }
+        }
+        nextEvictionWhenFull.set(oldestExpiry);
+    }
+
+    // the full content would make max-keys cost up to that many messages of memory
+    private static byte[] digest(String content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Submission {
+        private byte[] contentDigest;
+        private long expiresAt;
+
+        Submission(byte[] contentDigest, long expiresAt) {
+            this.contentDigest = contentDigest;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.udacity.jwdnd.c1.review.service;
+
+import com.udacity.jwdnd.c1.review.model.ChatMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Single-node bus: listeners are called on the publishing thread.
+ */
+@Service
+@ConditionalOnProperty(name = "chat.event-bus.type", havingValue = "in-process", matchIfMissing = true)
+public class InProcessMessageEventBus implements MessageEventBus {
+    private Logger logger = LoggerFactory.getLogger(InProcessMessageEventBus.class);
+
+    private List<Consumer<ChatMessage>> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(ChatMessage chatMessage) {
+        for (Consumer<ChatMessage> listener : listeners) {
+            try {
+                listener.accept(chatMessage);
+            } catch (RuntimeException e) {
+                logger.warn("Message listener failed for message " + chatMessage.getMessageId(), e);
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<ChatMessage> listener) {
+        listeners.add(listener);
+    }
+}
@@ -0,0 +1,201 @@
+package com.udacity.jwdnd.c1.review.service;
+
+import com.udacity.jwdnd.c1.review.model.ChatMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+@Service
+public class MessageBroadcaster {
+    private Logger logger = LoggerFactory.getLogger(MessageBroadcaster.class);
+
+    private ConcurrentMap<String, Set<Subscriber>> subscribersByRoom = new ConcurrentHashMap<>();
+    private AtomicInteger subscriberCount = new AtomicInteger();
+    private ExecutorService deliveryExecutor;
+    private int queueCapacity;
+    private int maxReplay;
+    private long timeout;
+
+    public MessageBroadcaster(@Value("${chat.push.delivery-threads:4}") int deliveryThreads,
+                              @Value("${chat.push.queue-capacity:256}") int queueCapacity,
+                              @Value("${chat.push.max-replay:500}") int maxReplay,
+                              @Value("${chat.push.timeout-ms:1800000}") long timeout) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.deliveryExecutor = Executors.newFixedThreadPool(deliveryThreads, runnable -> {
+            Thread thread = new Thread(runnable, "chat-push-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.queueCapacity = queueCapacity;
+        this.maxReplay = maxReplay;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Registers a new client of {@code room} and replays everything after {@code lastSeenSeq} before live
+     * delivery starts. {@code replay} returns the next batch of the room's messages after the given sequence
+     * number, oldest first. A client that has missed more than {@code chat.push.max-replay} messages is sent a
+     * {@code reload} event and disconnected instead, since live delivery would leave a hole after the replay.
+     */
+    public SseEmitter subscribe(String room, int lastSeenSeq, IntFunction<List<ChatMessage>> replay) {
+        SseEmitter emitter = new SseEmitter(timeout);
+        Subscriber subscriber = new Subscriber(room, emitter, queueCapacity, lastSeenSeq);
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onTimeout(() -> remove(subscriber));
+        emitter.onError(e -> remove(subscriber));
+
+        // live messages queue up while the replay runs; the drain skips anything the replay already covered
+        subscriber.scheduled.set(true);
+        subscribersByRoom.compute(room, (name, subscribers) -> {
+            Set<Subscriber> roomSubscribers = subscribers != null ? subscribers : ConcurrentHashMap.newKeySet();
+            roomSubscribers.add(subscriber);
+            return roomSubscribers;
+        });
+        subscriberCount.incrementAndGet();
+        try {
+            deliveryExecutor.execute(() -> {
+                try {
+                    int replayed = 0;
+                    List<ChatMessage> batch = replay.apply(subscriber.replayedUpTo);
+                    while (!batch.isEmpty()) {
+                        if (replayed >= maxReplay) {
+                            subscriber.emitter.send(SseEmitter.event().name("reload").data(""));
+                            drop(subscriber, "more than " + maxReplay + " messages to replay");
+                            return;
+                        }
+                        for (ChatMessage chatMessage : batch) {
+                            subscriber.send(chatMessage);
+                            subscriber.replayedUpTo = chatMessage.getRoomSeq();
+                        }
+                        replayed += batch.size();
+                        batch = replay.apply(subscriber.replayedUpTo);
+                    }
+                } catch (IOException | IllegalStateException e) {
+                    drop(subscriber, e.getMessage());
+                    return;
+                }
+                drain(subscriber);
+            });
+        } catch (RejectedExecutionException e) {
+            drop(subscriber, "broadcaster is shutting down");
+        }
+        return emitter;
+    }
+
+    /**
+     * Hands the message to the queue of every subscriber of its room without blocking; subscribers whose queue
+     * is full are disconnected and are expected to reconnect with their last seen sequence number.
+     */
+    public void publish(ChatMessage chatMessage) {
+        Set<Subscriber> subscribers = subscribersByRoom.get(chatMessage.getRoom());
+        if (subscribers == null) {
+            return;
+        }
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.queue.offer(chatMessage)) {
+                drop(subscriber, "delivery queue full");
+                continue;
+            }
+            if (subscriber.scheduled.compareAndSet(false, true)) {
+                try {
+                    deliveryExecutor.execute(() -> drain(subscriber));
+                } catch (RejectedExecutionException e) {
+                    drop(subscriber, "broadcaster is shutting down");
+                }
+            }
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscriberCount.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        deliveryExecutor.shutdownNow();
+        for (Set<Subscriber> subscribers : subscribersByRoom.values()) {
+            for (Subscriber subscriber : subscribers) {
+                drop(subscriber, "broadcaster is shutting down");
+            }
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        try {
+            do {
+                ChatMessage chatMessage;
+                while ((chatMessage = subscriber.queue.poll()) != null) {
+                    subscriber.send(chatMessage);
+                }
+                subscriber.scheduled.set(false);
+            } while (!subscriber.queue.isEmpty() && subscriber.scheduled.compareAndSet(false, true));
+        } catch (IOException | IllegalStateException e) {
+            drop(subscriber, e.getMessage());
+        }
+    }
+
+    private void drop(Subscriber subscriber, String reason) {
+        if (remove(subscriber)) {
+            logger.debug("Dropping chat subscriber of room " + subscriber.room + ": " + reason);
+            subscriber.emitter.complete();
+        }
+    }
+
+    private boolean remove(Subscriber subscriber) {
+        if (!subscriber.removed.compareAndSet(false, true)) {
+            return false;
+        }
+        // the set is removed under the same map lock that subscribe adds to it, so no subscriber is lost
+        subscribersByRoom.computeIfPresent(subscriber.room, (name, subscribers) -> {
+            subscribers.remove(subscriber);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+        subscriberCount.decrementAndGet();
+        return true;
+    }
+
+    private static class Subscriber {
+        private String room;
+        private SseEmitter emitter;
+        private BlockingQueue<ChatMessage> queue;
+        private AtomicBoolean scheduled = new AtomicBoolean();
+        private AtomicBoolean removed = new AtomicBoolean();
+        private int replayedUpTo;
+
+        Subscriber(String room, SseEmitter emitter, int queueCapacity, int lastSeenSeq) {
+            this.room = room;
+            this.emitter = emitter;
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+            this.replayedUpTo = lastSeenSeq;
+        }
+
+        // only ever called by the single delivery task that owns the scheduled flag; concurrent posters can
+        // complete out of sequence order, so live messages are only suppressed when the replay already sent them
+        void send(ChatMessage chatMessage) throws IOException {
+            if (chatMessage.getRoomSeq() <= replayedUpTo) {
+                return;
+            }
+            emitter.send(SseEmitter.event()
+                    .id(String.valueOf(chatMessage.getRoomSeq()))
+                    .name("message")
+                    .data(chatMessage));
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.udacity.jwdnd.c1.review.service;
+
+import com.udacity.jwdnd.c1.review.model.ChatMessage;
+
+import java.util.function.Consumer;
+
+/**
+ * Fans stored messages out to every node, including the one that stored them. {@link MessageService} publishes
+ * each message once it is readable and keeps its caches, the search index and push subscribers up to date
+ * from what it receives. Implementations deliver each message at most once per node; a broker-backed bus only
+ * needs to implement these two methods.
+ */
+public interface MessageEventBus {
+    void publish(ChatMessage chatMessage);
+
+    void subscribe(Consumer<ChatMessage> listener);
+}
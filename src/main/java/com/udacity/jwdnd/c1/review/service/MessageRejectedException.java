@@ -0,0 +1,11 @@
+package com.udacity.jwdnd.c1.review.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class MessageRejectedException extends RuntimeException {
+    public MessageRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,309 @@
+package com.udacity.jwdnd.c1.review.service;
+
+import com.udacity.jwdnd.c1.review.mapper.MessageMapper;
+import com.udacity.jwdnd.c1.review.model.ChatMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index over message text, kept up to date by {@link MessageService} on every insert.
+ * Terms map to sorted {@code int[]} posting lists of message ids. Only the newest
+ * {@code chat.search.max-indexed-messages} messages are indexed; older ids are pruned in bulk.
+ */
+@Service
+public class MessageSearchIndex {
+    private static final int MAX_TERM_LENGTH = 32;
+    private static final int MAX_PREFIX_EXPANSION = 256;
+    private static final int REBUILD_BATCH_SIZE = 1000;
+
+    private Logger logger = LoggerFactory.getLogger(MessageSearchIndex.class);
+
+    private MessageMapper messageMapper;
+    private ReadWriteLock lock = new ReentrantReadWriteLock();
+    private TreeMap<String, PostingList> terms = new TreeMap<>();
+    private Map<Integer, PostingList> users = new HashMap<>();
+
+    // ids in the order they were indexed, used to find what to evict once the index is full
+    private int[] indexedIds;
+    private int indexedCount;
+    private int oldestIndexed;
+    private int floorId;
+    private int evictedSinceCompaction;
+
+    public MessageSearchIndex(MessageMapper messageMapper,
+                              @Value("${chat.search.max-indexed-messages:1000000}") int maxIndexedMessages) {
+        this.messageMapper = messageMapper;
+        this.indexedIds = new int[maxIndexedMessages];
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        List<ChatMessage> newest = messageMapper.getLatestMessages(1);
+        if (newest.isEmpty()) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        int lastId = Math.max(0, newest.get(0).getMessageId() - indexedIds.length);
+        int indexed = 0;
+        List<ChatMessage> batch = messageMapper.getMessagesAfter(lastId, REBUILD_BATCH_SIZE);
+        while (!batch.isEmpty()) {
+            for (ChatMessage chatMessage : batch) {
+                add(chatMessage);
+            }
+            indexed += batch.size();
+            lastId = batch.get(batch.size() - 1).getMessageId();
+            batch = messageMapper.getMessagesAfter(lastId, REBUILD_BATCH_SIZE);
+        }
+        logger.info("Search index rebuilt from " + indexed + " messages in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    public void add(ChatMessage chatMessage) {
+        Set<String> tokens = tokenize(chatMessage.getMessageText());
+        int messageId = chatMessage.getMessageId();
+
+        lock.writeLock().lock();
+        try {
+            if (messageId < floorId) {
+                return;
+            }
+            for (String token : tokens) {
+                terms.computeIfAbsent(token, t -> new PostingList()).add(messageId);
+            }
+            if (chatMessage.getUserId() != null) {
+                users.computeIfAbsent(chatMessage.getUserId(), u -> new PostingList()).add(messageId);
+            }
+            track(messageId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the ids of up to {@code limit} messages below {@code beforeId}, newest first, that contain every
+     * query term and, when {@code userId} is given, were written by that user. A term ending in {@code *}
+     * matches any indexed term with that prefix; a prefix matching more than {@value #MAX_PREFIX_EXPANSION}
+     * terms is rejected rather than searched partially.
+     */
+    public List<Integer> search(String query, Integer userId, int beforeId, int limit) {
+        List<String> exactTerms = new ArrayList<>();
+        List<String> prefixes = new ArrayList<>();
+        for (String word : query.trim().split("\\s+")) {
+            boolean prefix = word.endsWith("*");
+            List<String> tokens = new ArrayList<>(tokenize(word));
+            if (prefix && !tokens.isEmpty()) {
+                prefixes.add(tokens.remove(tokens.size() - 1));
+            }
+            exactTerms.addAll(tokens);
+        }
+
+        lock.readLock().lock();
+        try {
+            List<PostingList[]> clauses = new ArrayList<>();
+            for (String term : exactTerms) {
+                PostingList postings = terms.get(term);
+                if (postings == null) {
+                    return Collections.emptyList();
+                }
+                clauses.add(new PostingList[] {postings});
+            }
+            for (String prefix : prefixes) {
+                PostingList[] expansion = terms.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()
+                        .stream().limit(MAX_PREFIX_EXPANSION + 1).toArray(PostingList[]::new);
+                if (expansion.length == 0) {
+                    return Collections.emptyList();
+                }
+                if (expansion.length > MAX_PREFIX_EXPANSION) {
+                    throw new SearchQueryTooBroadException(
+                            "\"" + prefix + "*\" matches too many words, please type a few more letters.");
+                }
+                clauses.add(expansion);
+            }
+            if (userId != null) {
+                PostingList postings = users.get(userId);
+                if (postings == null) {
+                    return Collections.emptyList();
+                }
+                clauses.add(new PostingList[] {postings});
+            }
+            if (clauses.isEmpty()) {
+                return Collections.emptyList();
+            }
+            return intersect(clauses, beforeId, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // walks the smallest clause from beforeId downwards and probes the other clauses by binary search
+    private List<Integer> intersect(List<PostingList[]> clauses, int beforeId, int limit) {
+        PostingList[] driver = clauses.get(0);
+        for (PostingList[] clause : clauses) {
+            if (size(clause) < size(driver)) {
+                driver = clause;
+            }
+        }
+
+        int[] cursors = new int[driver.length];
+        for (int i = 0; i < driver.length; i++) {
+            cursors[i] = driver[i].lastIndexBelow(beforeId);
+        }
+
+        List<Integer> result = new ArrayList<>(limit);
+        while (result.size() < limit) {
+            int candidate = -1;
+            for (int i = 0; i < driver.length; i++) {
+                if (cursors[i] >= 0) {
+                    candidate = Math.max(candidate, driver[i].get(cursors[i]));
+                }
+            }
+            if (candidate < floorId || candidate < 0) {
+                break;
+            }
+            for (int i = 0; i < driver.length; i++) {
+                if (cursors[i] >= 0 && driver[i].get(cursors[i]) == candidate) {
+                    cursors[i]--;
+                }
+            }
+
+            boolean matches = true;
+            for (PostingList[] clause : clauses) {
+                if (clause != driver && !contains(clause, candidate)) {
+                    matches = false;
+                    break;
+                }
+            }
+            if (matches) {
+                result.add(candidate);
+            }
+        }
+        return result;
+    }
+
+    private void track(int messageId) {
+        if (indexedCount < indexedIds.length) {
+            indexedIds[(oldestIndexed + indexedCount++) % indexedIds.length] = messageId;
+            return;
+        }
+
+        floorId = Math.max(floorId, indexedIds[oldestIndexed] + 1);
+        indexedIds[oldestIndexed] = messageId;
+        oldestIndexed = (oldestIndexed + 1) % indexedIds.length;
+
+        // pruning walks every posting list, so only do it once an eighth of the index has aged out
+        if (++evictedSinceCompaction >= Math.max(1, indexedIds.length / 8)) {
+            compact(terms.values());
+            compact(users.values());
+            evictedSinceCompaction = 0;
+        }
+    }
+
+    private void compact(Collection<PostingList> postingLists) {
+        Iterator<PostingList> iterator = postingLists.iterator();
+        while (iterator.hasNext()) {
+            PostingList postings = iterator.next();
+            postings.removeBelow(floorId);
+            if (postings.size == 0) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static int size(PostingList[] clause) {
+        int size = 0;
+        for (PostingList postings : clause) {
+            size += postings.size;
+        }
+        return size;
+    }
+
+    private static boolean contains(PostingList[] clause, int messageId) {
+        for (PostingList postings : clause) {
+            if (postings.contains(messageId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static Set<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                String token = text.substring(start, Math.min(i, start + MAX_TERM_LENGTH));
+                tokens.add(token.toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private static class PostingList {
+        private int[] ids = new int[2];
+        private int size;
+
+        // ids almost always arrive in ascending order, so this is an append in the common case
+        void add(int messageId) {
+            int position = size;
+            while (position > 0 && ids[position - 1] > messageId) {
+                position--;
+            }
+            if (position > 0 && ids[position - 1] == messageId) {
+                return;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size + (size >> 1) + 1);
+            }
+            System.arraycopy(ids, position, ids, position + 1, size - position);
+            ids[position] = messageId;
+            size++;
+        }
+
+        int get(int index) {
+            return ids[index];
+        }
+
+        boolean contains(int messageId) {
+            return Arrays.binarySearch(ids, 0, size, messageId) >= 0;
+        }
+
+        int lastIndexBelow(int messageId) {
+            int index = Arrays.binarySearch(ids, 0, size, messageId);
+            return (index >= 0 ? index : -index - 1) - 1;
+        }
+
+        void removeBelow(int floorId) {
+            int keepFrom = lastIndexBelow(floorId) + 1;
+            if (keepFrom > 0) {
+                System.arraycopy(ids, keepFrom, ids, 0, size - keepFrom);
+                size -= keepFrom;
+                if (size < ids.length / 4) {
+                    ids = Arrays.copyOf(ids, Math.max(2, size * 2));
+                }
+            }
+        }
+    }
+}
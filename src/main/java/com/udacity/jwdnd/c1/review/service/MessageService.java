@@ -1,12 +1,42 @@
 package com.udacity.jwdnd.c1.review.service;
 
+import com.udacity.jwdnd.c1.review.archive.MessageArchive;
 import com.udacity.jwdnd.c1.review.mapper.MessageMapper;
 import com.udacity.jwdnd.c1.review.model.ChatMessage;
+import com.udacity.jwdnd.c1.review.model.MessagePage;
 import com.udacity.jwdnd.c1.review.model.MessageType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.ibatis.cursor.Cursor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 
 @Service
@@ -23,28 +53,417 @@ public class MessageService {
 //        chatMessages = new ArrayList<>();
 //    }
 
+    public static final String DEFAULT_ROOM = "general";
+
+    private static final Pattern ROOM_NAME = Pattern.compile("[a-z0-9][a-z0-9_-]{0,19}");
+
+    private static final int MAX_SEQ_ATTEMPTS = 5;
+
+    private Logger logger = LoggerFactory.getLogger(MessageService.class);
+
     private MessageMapper messageMapper;
+    private int pageSize;
+    private int recentBufferCapacity;
+    private long seqGapTimeoutMillis;
+    private ConcurrentMap<String, ChatRoom> rooms = new ConcurrentHashMap<>();
+    private ReentrantLock[] roomLocks;
+    private LongAdder bufferHits = new LongAdder();
+    private LongAdder bufferMisses = new LongAdder();
+    private MessageBroadcaster messageBroadcaster;
+    private BatchMessageWriter batchMessageWriter;
+    private MessageSearchIndex searchIndex;
+    private MessageEventBus messageEventBus;
+    private ChatStatistics chatStatistics;
+    private UserNameCache userNameCache;
+    private MessageArchive messageArchive;
+    private Map<MessageType, Counter> messageCounters = new EnumMap<>(MessageType.class);
 
-    public MessageService(MessageMapper messageMapper) {
+    public MessageService(MessageMapper messageMapper,
+                          MessageBroadcaster messageBroadcaster,
+                          BatchMessageWriter batchMessageWriter,
+                          MessageSearchIndex searchIndex,
+                          MessageEventBus messageEventBus,
+                          ChatStatistics chatStatistics,
+                          UserNameCache userNameCache,
+                          MessageArchive messageArchive,
+                          MeterRegistry meterRegistry,
+                          @Value("${chat.page-size:50}") int pageSize,
+                          @Value("${chat.recent-buffer.capacity:500}") int recentBufferCapacity,
+                          @Value("${chat.rooms.lock-stripes:64}") int lockStripes,
+                          @Value("${chat.rooms.seq-gap-timeout-ms:10000}") long seqGapTimeoutMillis) {
         this.messageMapper = messageMapper;
+        this.messageBroadcaster = messageBroadcaster;
+        this.batchMessageWriter = batchMessageWriter;
+        this.searchIndex = searchIndex;
+        this.messageEventBus = messageEventBus;
+        this.chatStatistics = chatStatistics;
+        this.userNameCache = userNameCache;
+        this.messageArchive = messageArchive;
+        this.pageSize = pageSize;
+        this.recentBufferCapacity = recentBufferCapacity;
+        this.seqGapTimeoutMillis = seqGapTimeoutMillis;
+        this.roomLocks = new ReentrantLock[lockStripes];
+        for (int i = 0; i < lockStripes; i++) {
+            roomLocks[i] = new ReentrantLock();
+        }
+        for (MessageType messageType : MessageType.values()) {
+            messageCounters.put(messageType, meterRegistry.counter("chat.messages", "type", messageType.name()));
+        }
     }
 
-    public void addChatMessage(String userName, String messageText, MessageType messageType) {
+    @PostConstruct
+    public void start() {
+        messageEventBus.subscribe(this::messageReceived);
+        ChatRoom chatRoom = getRoom(DEFAULT_ROOM);
+        logger.info("Room " + DEFAULT_ROOM + " loaded up to sequence " + chatRoom.getLastSeq());
+    }
+
+    @PreDestroy
+    public void logRecentMessageStats() {
+        logger.info("Recent message buffers of " + rooms.size() + " room(s), hits: " + bufferHits.sum()
+                + ", misses: " + bufferMisses.sum());
+    }
+
+    /**
+     * Lower-cases a room name from a request and checks it, treating a missing name as the default room.
+     */
+    public String normalizeRoom(String room) {
+        if (room == null || room.isBlank()) {
+            return DEFAULT_ROOM;
+        }
+        String normalized = room.trim().toLowerCase();
+        if (!ROOM_NAME.matcher(normalized).matches()) {
+            throw new InvalidRoomException("Invalid room name: " + room);
+        }
+        return normalized;
+    }
+
+    public void addChatMessage(String userName, String room, String messageText, MessageType messageType) {
+        Integer userId = userNameCache.getUserId(userName);
+        if (userId == null) {
+            throw new IllegalArgumentException("Unknown user " + userName);
+        }
+        // the cached name, so buffered messages of one user share a single String
+        userName = userNameCache.getUserName(userId);
+
+        ChatMessage chatMessage;
         switch (messageType) {
             case SHOUT:
-                messageMapper.insert(new ChatMessage(null, userName, messageText.toUpperCase()));
+                chatMessage = new ChatMessage(null, userName, messageText.toUpperCase());
                 break;
             case WHISPER:
-                messageMapper.insert(new ChatMessage(null, userName, messageText.toLowerCase()));
+                chatMessage = new ChatMessage(null, userName, messageText.toLowerCase());
                 break;
             default:
-                messageMapper.insert(new ChatMessage(null, userName, messageText));
+                chatMessage = new ChatMessage(null, userName, messageText);
                 break;
         }
+        chatMessage.setRoom(room);
+        chatMessage.setUserId(userId);
+        chatMessage.setMessageType(messageType);
+        chatMessage.setCreatedAt(Instant.now());
+
+        // only posts to rooms sharing a stripe wait on each other; the stripe makes sequence order match
+        // insert order within a room
+        ChatRoom chatRoom = getRoom(room);
+        boolean writeBehind = batchMessageWriter.isEnabled();
+        if (writeBehind) {
+            // a full queue is waited on here, so it never holds up the other rooms of the stripe
+            batchMessageWriter.reserve();
+        }
+        CompletableFuture<ChatMessage> inserted = null;
+        ReentrantLock lock = lockFor(room);
+        lock.lock();
+        try {
+            chatMessage.setRoomSeq(chatRoom.nextSeq());
+            if (writeBehind) {
+                inserted = submit(chatRoom, chatMessage);
+            } else {
+                insert(chatRoom, chatMessage);
+                messageInserted(chatMessage);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (inserted != null && batchMessageWriter.getAckMode() == BatchMessageWriter.AckMode.FLUSHED) {
+            try {
+                inserted.join();
+            } catch (CompletionException e) {
+                // so a rejected batch is still answered with the 503 of MessageRejectedException
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        messageCounters.get(messageType).increment();
     }
 
-    public List<ChatMessage> getChatMessages() {
-        return messageMapper.getAllMessages();
+    /**
+     * Inserts under the room's lock stripe. Another node may have taken the sequence number before its message
+     * reached us, in which case we catch up from the database and try the next one.
+     */
+    private void insert(ChatRoom chatRoom, ChatMessage chatMessage) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                messageMapper.insert(chatMessage);
+                return;
+            } catch (DuplicateKeyException e) {
+                // the sequence number is someone else's message, so it is not handed back
+                if (attempt == MAX_SEQ_ATTEMPTS) {
+                    throw e;
+                }
+                chatRoom.advanceSeq(getLastRoomSeq(chatRoom.getName()));
+                chatMessage.setRoomSeq(chatRoom.nextSeq());
+            } catch (RuntimeException e) {
+                chatRoom.releaseSeq(chatMessage.getRoomSeq());
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Queues the message in the place reserved before the lock was taken. Its sequence number is handed back
+     * if the message is not stored after all, so readers don't wait for it.
+     */
+    private CompletableFuture<ChatMessage> submit(ChatRoom chatRoom, ChatMessage chatMessage) {
+        int roomSeq = chatMessage.getRoomSeq();
+        try {
+            return batchMessageWriter.submit(chatMessage)
+                    .whenComplete((stored, e) -> {
+                        if (e != null) {
+                            chatRoom.releaseSeq(roomSeq);
+                        }
+                    })
+                    .thenApply(this::messageInserted);
+        } catch (MessageRejectedException e) {
+            chatRoom.releaseSeq(roomSeq);
+            throw e;
+        }
+    }
+
+    private ChatMessage messageInserted(ChatMessage chatMessage) {
+        messageEventBus.publish(chatMessage);
+        return chatMessage;
+    }
+
+    /**
+     * Called by the event bus for every stored message, ours or another node's. Rooms nobody has opened here
+     * yet are skipped; they read their state from the database on first use.
+     */
+    private void messageReceived(ChatMessage chatMessage) {
+        userNameCache.named(chatMessage);
+        chatStatistics.record(chatMessage);
+        searchIndex.add(chatMessage);
+        if (rooms.containsKey(chatMessage.getRoom())) {
+            // push subscribers get it once the messages before it are visible too
+            ChatRoom chatRoom = getRoom(chatMessage.getRoom());
+            chatRoom.advanceSeq(chatMessage.getRoomSeq());
+            chatRoom.messageVisible(chatMessage);
+        } else {
+            messageBroadcaster.publish(chatMessage);
+        }
+    }
+
+    /**
+     * Hands a room's whole history, oldest first, to {@code consumer} as a lazily fetched cursor that is only
+     * valid for the duration of the call. Archived messages come first, a segment at a time. Memory use does
+     * not depend on the number of rows.
+     */
+    @Transactional(readOnly = true)
+    public void streamChatMessages(String room, Consumer<Iterable<ChatMessage>> consumer) {
+        Integer archivedSeq = messageArchive.getLastRoomSeq(room);
+        Iterable<ChatMessage> archived = messageArchive.streamRoomMessages(room);
+        try (Cursor<ChatMessage> cursor = messageMapper.streamRoomMessages(room)) {
+            if (archivedSeq == null) {
+                consumer.accept(userNameCache.named(cursor));
+            } else {
+                // rows being archived right now are in both
+                consumer.accept(userNameCache.named(() -> Stream.concat(
+                        StreamSupport.stream(archived.spliterator(), false),
+                        StreamSupport.stream(cursor.spliterator(), false)
+                                .filter(chatMessage -> chatMessage.getRoomSeq() > archivedSeq)).iterator()));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public MessagePage getLatestMessages(String room) {
+        // one extra row tells us whether an older page exists
+        ChatRoom chatRoom = getRoom(room);
+        List<ChatMessage> messages = countBufferRead(
+                chatRoom.getRecentMessages().getBefore(Integer.MAX_VALUE, chatRoom.getVisibleSeq(), pageSize + 1));
+        if (messages == null) {
+            messages = getRoomMessagesBefore(room, Integer.MAX_VALUE, pageSize + 1);
+        }
+        return toOlderPage(messages, false);
+    }
+
+    public MessagePage getMessagesBefore(String room, int beforeSeq) {
+        ChatRoom chatRoom = getRoom(room);
+        List<ChatMessage> messages = countBufferRead(
+                chatRoom.getRecentMessages().getBefore(beforeSeq, chatRoom.getVisibleSeq(), pageSize + 1));
+        if (messages == null) {
+            messages = getRoomMessagesBefore(room, beforeSeq, pageSize + 1);
+        }
+        return toOlderPage(messages, true);
+    }
+
+    public MessagePage getMessagesAfter(String room, int afterSeq) {
+        ChatRoom chatRoom = getRoom(room);
+        List<ChatMessage> messages = countBufferRead(
+                chatRoom.getRecentMessages().getAfter(afterSeq, chatRoom.getVisibleSeq(), pageSize + 1));
+        if (messages == null) {
+            messages = getRoomMessagesAfter(room, afterSeq, pageSize + 1);
+        }
+        boolean hasNewer = messages.size() > pageSize;
+        if (hasNewer) {
+            messages = messages.subList(0, pageSize);
+        }
+
+        Integer olderCursor = null;
+        if (afterSeq > 0) {
+            olderCursor = messages.isEmpty() ? afterSeq + 1 : messages.get(0).getRoomSeq();
+        }
+        Integer newerCursor = hasNewer ? messages.get(messages.size() - 1).getRoomSeq() : null;
+        return new MessagePage(messages, olderCursor, newerCursor);
+    }
+
+    public MessagePage searchMessages(String query, String userName, Integer beforeId) {
+        Integer userId = null;
+        if (userName != null && !userName.isEmpty()) {
+            userId = userNameCache.getUserId(userName);
+            if (userId == null) {
+                return new MessagePage(new ArrayList<>(), null, null);
+            }
+        }
+        List<Integer> messageIds = searchIndex.search(query, userId,
+                beforeId != null ? beforeId : Integer.MAX_VALUE, pageSize);
+        if (messageIds.isEmpty()) {
+            return new MessagePage(new ArrayList<>(), null, null);
+        }
+
+        // newest first, like the ids; the last one is the cursor for the next page of hits
+        List<ChatMessage> messages = messageMapper.getMessagesByIds(messageIds);
+        if (messages.size() < messageIds.size() && !messageArchive.isEmpty()) {
+            Set<Integer> archivedIds = new HashSet<>(messageIds);
+            messages.forEach(chatMessage -> archivedIds.remove(chatMessage.getMessageId()));
+            messages = new ArrayList<>(messages);
+            messages.addAll(messageArchive.getMessagesByIds(archivedIds));
+            messages.sort(Comparator.comparing(ChatMessage::getMessageId).reversed());
+        }
+        userNameCache.named(messages);
+        Integer olderCursor = messageIds.size() == pageSize ? messageIds.get(messageIds.size() - 1) : null;
+        return new MessagePage(messages, olderCursor, null);
+    }
+
+    /**
+     * Version of everything the room's pages show. It changes whenever a message becomes readable, and is
+     * answered from memory once the room is loaded.
+     */
+    public int getRoomVersion(String room) {
+        return getRoom(room).getVisibleSeq();
+    }
+
+    public long getRoomLastModified(String room) {
+        return getRoom(room).getLastModified();
+    }
+
+    public int getActiveRoomCount() {
+        return rooms.size();
+    }
+
+    public long getRecentBufferHits() {
+        return bufferHits.sum();
+    }
+
+    public long getRecentBufferMisses() {
+        return bufferMisses.sum();
+    }
+
+    /**
+     * Returns the room's state, loading its last sequence number and newest messages on first use.
+     */
+    private ChatRoom getRoom(String room) {
+        ChatRoom chatRoom = rooms.computeIfAbsent(room, name ->
+                new ChatRoom(name, recentBufferCapacity, seqGapTimeoutMillis, messageBroadcaster::publish));
+        if (!chatRoom.isLoaded()) {
+            ReentrantLock lock = lockFor(room);
+            lock.lock();
+            try {
+                if (!chatRoom.isLoaded()) {
+                    chatRoom.advanceSeq(getLastRoomSeq(room));
+                    RecentMessageBuffer recentMessages = chatRoom.getRecentMessages();
+                    getRoomMessagesBefore(room, Integer.MAX_VALUE, recentMessages.getCapacity())
+                            .forEach(recentMessages::add);
+                    chatRoom.markLoaded();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return chatRoom;
+    }
+
+    private int getLastRoomSeq(String room) {
+        Integer lastSeq = messageMapper.getLastRoomSeq(room);
+        Integer archivedSeq = messageArchive.getLastRoomSeq(room);
+        return Math.max(lastSeq == null ? 0 : lastSeq, archivedSeq == null ? 0 : archivedSeq);
+    }
+
+    /**
+     * Reads from MESSAGES and, when that comes up short, continues with older messages from the archive. Rows
+     * being archived right now can be in both, so only archived messages older than the hot ones are taken.
+     */
+    private List<ChatMessage> getRoomMessagesBefore(String room, int beforeSeq, int limit) {
+        List<ChatMessage> messages = messageMapper.getRoomMessagesBefore(room, beforeSeq, limit);
+        if (messages.size() < limit) {
+            int below = messages.isEmpty() ? beforeSeq : messages.get(0).getRoomSeq();
+            List<ChatMessage> archived = messageArchive.getRoomMessagesBefore(room, below, limit - messages.size());
+            if (!archived.isEmpty()) {
+                archived.addAll(messages);
+                messages = archived;
+            }
+        }
+        return userNameCache.named(messages);
+    }
+
+    private List<ChatMessage> getRoomMessagesAfter(String room, int afterSeq, int limit) {
+        List<ChatMessage> messages = messageArchive.getRoomMessagesAfter(room, afterSeq, limit);
+        if (messages.size() < limit) {
+            int above = messages.isEmpty() ? afterSeq : messages.get(messages.size() - 1).getRoomSeq();
+            messages.addAll(messageMapper.getRoomMessagesAfter(room, above, limit - messages.size()));
+        }
+        return userNameCache.named(messages);
+    }
+
+    private ReentrantLock lockFor(String room) {
+        int hash = room.hashCode();
+        return roomLocks[Math.floorMod(hash ^ (hash >>> 16), roomLocks.length)];
+    }
+
+    private List<ChatMessage> countBufferRead(List<ChatMessage> messages) {
+        if (messages == null) {
+            bufferMisses.increment();
+        } else {
+            bufferHits.increment();
+        }
+        return messages;
+    }
+
+    private MessagePage toOlderPage(List<ChatMessage> messages, boolean hasNewer) {
+        boolean hasOlder = messages.size() > pageSize;
+        if (hasOlder) {
+            messages = messages.subList(1, messages.size());
+        }
+
+        Integer olderCursor = hasOlder ? messages.get(0).getRoomSeq() : null;
+        Integer newerCursor = null;
+        if (hasNewer && !messages.isEmpty()) {
+            newerCursor = messages.get(messages.size() - 1).getRoomSeq();
+        }
+        return new MessagePage(messages, olderCursor, newerCursor);
     }
 
 //    public String upperCase(String message) {
@@ -0,0 +1,126 @@
+package com.udacity.jwdnd.c1.review.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token buckets for message posting, one per user plus one shared by everybody. Each bucket is a single
+ * {@link AtomicLong} holding its theoretical arrival time (the generic cell rate algorithm), so taking a token
+ * is one compare-and-set and no lock is ever held. Buckets that have refilled completely carry no state and
+ * are swept out of the map every {@code idle-eviction-ms}.
+ */
+@Service
+public class RateLimiter {
+    private boolean enabled;
+    private Bucket globalBucket;
+    private long userInterval;
+    private long userTolerance;
+    private ConcurrentMap<String, Bucket> userBuckets = new ConcurrentHashMap<>();
+    private long evictionInterval;
+    private AtomicLong nextEviction;
+    private Counter userThrottled;
+    private Counter globalThrottled;
+
+    public RateLimiter(MeterRegistry meterRegistry,
+                       @Value("${chat.rate-limit.enabled:true}") boolean enabled,
+                       @Value("${chat.rate-limit.user.capacity:20}") int userCapacity,
+                       @Value("${chat.rate-limit.user.refill-per-second:5}") double userRefillPerSecond,
+                       @Value("${chat.rate-limit.global.capacity:2000}") int globalCapacity,
+                       @Value("${chat.rate-limit.global.refill-per-second:1000}") double globalRefillPerSecond,
+                       @Value("${chat.rate-limit.idle-eviction-ms:60000}") long idleEvictionMillis) {
+        this.enabled = enabled;
+        this.userInterval = interval(userRefillPerSecond);
+        this.userTolerance = userInterval * (userCapacity - 1L);
+        long globalInterval = interval(globalRefillPerSecond);
+        this.globalBucket = new Bucket(System.nanoTime(), globalInterval, globalInterval * (globalCapacity - 1L));
+        this.evictionInterval = TimeUnit.MILLISECONDS.toNanos(idleEvictionMillis);
+        this.nextEviction = new AtomicLong(System.nanoTime() + evictionInterval);
+        this.userThrottled = meterRegistry.counter("chat.rate.limited", "scope", "user");
+        this.globalThrottled = meterRegistry.counter("chat.rate.limited", "scope", "global");
+    }
+
+    /**
+     * Takes one token from the user's bucket and then from the global one.
+     *
+     * @throws RateLimitExceededException if either bucket is empty; it carries the time until a token is free
+     */
+    public void acquire(String userName) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.nanoTime();
+        evictIdleBuckets(now);
+
+        Bucket userBucket = userBuckets.computeIfAbsent(userName,
+                name -> new Bucket(now, userInterval, userTolerance));
+        long wait = userBucket.tryAcquire(now);
+        if (wait > 0) {
+            userThrottled.increment();
+            throw new RateLimitExceededException("Posting too fast, slow down", wait);
+        }
+        wait = globalBucket.tryAcquire(now);
+        if (wait > 0) {
+            globalThrottled.increment();
+            throw new RateLimitExceededException("The chat is busy, try again shortly", wait);
+        }
+    }
+
+    public int getTrackedUsers() {
+        return userBuckets.size();
+    }
+
+    // amortized: at most one caller per interval pays for the sweep
+    private void evictIdleBuckets(long now) {
+        long due = nextEviction.get();
+        if (now - due < 0 || !nextEviction.compareAndSet(due, now + evictionInterval)) {
+            return;
+        }
+        // a full bucket is indistinguishable from a new one; a poster racing the removal loses at most a token
+        userBuckets.entrySet().removeIf(entry -> entry.getValue().isFull(now));
+    }
+
+    private static long interval(double refillPerSecond) {
+        if (refillPerSecond <= 0) {
+            throw new IllegalArgumentException("refill rate must be positive: " + refillPerSecond);
+        }
+        return (long) (TimeUnit.SECONDS.toNanos(1) / refillPerSecond);
+    }
+
+    private static class Bucket {
+        private AtomicLong theoreticalArrival;
+        private long interval;
+        private long tolerance;
+
+        Bucket(long now, long interval, long tolerance) {
+            this.theoreticalArrival = new AtomicLong(now);
+            this.interval = interval;
+            this.tolerance = tolerance;
+        }
+
+        // returns 0 when a token was taken, otherwise the nanoseconds until one will be available
+        long tryAcquire(long now) {
+            while (true) {
+                long arrival = theoreticalArrival.get();
+                long start = now - arrival > 0 ? now : arrival;
+                long wait = start - tolerance - now;
+                if (wait > 0) {
+                    return wait;
+                }
+                if (theoreticalArrival.compareAndSet(arrival, start + interval)) {
+                    return 0;
+                }
+            }
+        }
+
+        boolean isFull(long now) {
+            return now - theoreticalArrival.get() >= 0;
+        }
+    }
+}
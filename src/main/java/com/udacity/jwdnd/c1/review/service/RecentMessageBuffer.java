@@ -0,0 +1,102 @@
+package com.udacity.jwdnd.c1.review.service;
+
+import com.udacity.jwdnd.c1.review.model.ChatMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free ring of the newest messages of one room. A message lives in slot {@code roomSeq % capacity}, so
+ * the buffer can answer any keyset read that stays inside the last {@code capacity} sequence numbers;
+ * everything else is a miss and the caller falls back to the database.
+ * <p>
+ * Reads only go up to the room's visible sequence number, below which every message is either held or was
+ * never stored, so a message that is still on its way can't be skipped over by a reader's cursor.
+ */
+public class RecentMessageBuffer {
+    private AtomicReferenceArray<ChatMessage> slots;
+    private int capacity;
+    private AtomicInteger newestSeq = new AtomicInteger();
+    private volatile boolean warm;
+
+    public RecentMessageBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    public void add(ChatMessage chatMessage) {
+        int roomSeq = chatMessage.getRoomSeq();
+        int slot = Math.floorMod(roomSeq, capacity);
+        ChatMessage current;
+        do {
+            current = slots.get(slot);
+            if (current != null && current.getRoomSeq() >= roomSeq) {
+                return;
+            }
+        } while (!slots.compareAndSet(slot, current, chatMessage));
+        newestSeq.accumulateAndGet(roomSeq, Math::max);
+    }
+
+    public void markWarm() {
+        warm = true;
+    }
+
+    /**
+     * Returns up to {@code limit} messages with a sequence number below {@code beforeSeq} and at most
+     * {@code visibleSeq}, oldest first, or {@code null} if older messages may exist that are no longer held in
+     * the ring.
+     */
+    public List<ChatMessage> getBefore(int beforeSeq, int visibleSeq, int limit) {
+        if (!warm) {
+            return null;
+        }
+
+        int newest = newestSeq.get();
+        int floor = newest - capacity;
+        List<ChatMessage> result = new ArrayList<>(Math.min(limit, capacity));
+        int top = Math.min(visibleSeq, newest);
+        for (int seq = Math.min(beforeSeq - 1, top); seq > floor && seq > 0 && result.size() < limit; seq--) {
+            ChatMessage chatMessage = slots.get(Math.floorMod(seq, capacity));
+            if (chatMessage != null && chatMessage.getRoomSeq() == seq) {
+                result.add(chatMessage);
+            }
+        }
+
+        if (result.size() < limit && floor > 0 && beforeSeq > 1) {
+            return null;
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Returns up to {@code limit} messages with a sequence number above {@code afterSeq} and at most
+     * {@code visibleSeq}, oldest first, or {@code null} if part of that range has already been overwritten.
+     */
+    public List<ChatMessage> getAfter(int afterSeq, int visibleSeq, int limit) {
+        int newest = newestSeq.get();
+        if (!warm || afterSeq < newest - capacity) {
+            return null;
+        }
+
+        List<ChatMessage> result = new ArrayList<>(Math.min(limit, capacity));
+        int top = Math.min(visibleSeq, newest);
+        for (int seq = afterSeq + 1; seq <= top && result.size() < limit; seq++) {
+            ChatMessage chatMessage = slots.get(Math.floorMod(seq, capacity));
+            if (chatMessage != null && chatMessage.getRoomSeq() == seq) {
+                result.add(chatMessage);
+            }
+        }
+        return result;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,11 @@
+package com.udacity.jwdnd.c1.review.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class SearchQueryTooBroadException extends RuntimeException {
+    public SearchQueryTooBroadException(String message) {
+        super(message);
+    }
+}
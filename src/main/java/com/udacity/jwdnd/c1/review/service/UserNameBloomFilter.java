@@ -0,0 +1,112 @@
+package com.udacity.jwdnd.c1.review.service;
+
+import com.udacity.jwdnd.c1.review.mapper.UserMapper;
+import org.apache.ibatis.cursor.Cursor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter of the user names that are taken, so most signup availability checks are answered without a
+ * query. A miss means the name is free as far as this node knows; a hit may be a false positive, about
+ * {@code chat.signup.bloom.false-positive-rate} of the time while there are fewer than
+ * {@code chat.signup.bloom.expected-users} users, and has to be confirmed against USERS. Names taken on other
+ * nodes are only seen after a restart, which is fine because the unique index on USERS.username has the final
+ * word. Filled from one streaming pass over USERS at startup and added to on every insert.
+ */
+@Service
+public class UserNameBloomFilter {
+    private Logger logger = LoggerFactory.getLogger(UserNameBloomFilter.class);
+
+    private UserMapper userMapper;
+    private TransactionTemplate transactionTemplate;
+    private AtomicLongArray bits;
+    private long bitCount;
+    private int hashCount;
+
+    public UserNameBloomFilter(UserMapper userMapper, PlatformTransactionManager transactionManager,
+                               @Value("${chat.signup.bloom.expected-users:100000}") int expectedUsers,
+                               @Value("${chat.signup.bloom.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.userMapper = userMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        // optimal size and number of hashes for n entries at false positive rate p: m = -n ln p / (ln 2)^2,
+        // k = m / n ln 2
+        double optimalBits = -Math.max(1, expectedUsers) * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        int words = (int) Math.min(Integer.MAX_VALUE, Math.max(1, (long) Math.ceil(optimalBits / 64)));
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = words * 64L;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / Math.max(1, expectedUsers) * Math.log(2)));
+    }
+
+    @PostConstruct
+    public void load() {
+        long start = System.nanoTime();
+        long[] loaded = new long[1];
+        // the cursor needs its SqlSession open until the last row is read
+        transactionTemplate.executeWithoutResult(status -> {
+            try (Cursor<String> cursor = userMapper.streamAllUserNames()) {
+                cursor.forEach(userName -> {
+                    add(userName);
+                    loaded[0]++;
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        logger.info("Loaded " + loaded[0] + " user names into a " + bits.length() * 8 / 1024 + " KiB filter with "
+                + hashCount + " hashes in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    public void add(String userName) {
+        long hash1 = hash(userName);
+        long hash2 = mix(hash1 ^ 0x9E3779B97F4A7C15L);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(hash1 + i * hash2, bitCount);
+            long mask = 1L << bit;
+            int word = (int) (bit >>> 6);
+            if ((bits.get(word) & mask) == 0) {
+                bits.accumulateAndGet(word, mask, (current, added) -> current | added);
+            }
+        }
+    }
+
+    /**
+     * Returns {@code false} only if the name has certainly not been added.
+     */
+    public boolean mightContain(String userName) {
+        long hash1 = hash(userName);
+        long hash2 = mix(hash1 ^ 0x9E3779B97F4A7C15L);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(hash1 + i * hash2, bitCount);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 64 bit FNV-1a over the UTF-8 bytes, finished with the MurmurHash3 mixer so every bit depends on every byte
+    private static long hash(String userName) {
+        long hash = 0xCBF29CE484222325L;
+        for (byte b : userName.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long hash) {
+        hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+        hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return hash ^ (hash >>> 33);
+    }
+}
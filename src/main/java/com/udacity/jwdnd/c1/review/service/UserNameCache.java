@@ -0,0 +1,109 @@
+package com.udacity.jwdnd.c1.review.service;
+
+import com.udacity.jwdnd.c1.review.mapper.UserMapper;
+import com.udacity.jwdnd.c1.review.model.ChatMessage;
+import com.udacity.jwdnd.c1.review.model.User;
+import org.springframework.stereotype.Service;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Maps user ids to names and back in front of {@link UserMapper}. Messages only store the author's id; every
+ * message shown gets its name from here, so all messages of a user share one String instance instead of each
+ * row bringing its own copy. User names never change, so entries are never invalidated.
+ */
+@Service
+public class UserNameCache {
+    private UserMapper userMapper;
+    private ConcurrentMap<Integer, String> namesById = new ConcurrentHashMap<>();
+    private ConcurrentMap<String, Integer> idsByName = new ConcurrentHashMap<>();
+
+    public UserNameCache(UserMapper userMapper) {
+        this.userMapper = userMapper;
+    }
+
+    /**
+     * Returns the user's name, or {@code null} if there is no such user.
+     */
+    public String getUserName(int userId) {
+        String userName = namesById.get(userId);
+        if (userName == null) {
+            userName = userMapper.getUserName(userId);
+            if (userName != null) {
+                userName = remember(userId, userName);
+            }
+        }
+        return userName;
+    }
+
+    /**
+     * Returns the user's id, or {@code null} if there is no such user.
+     */
+    public Integer getUserId(String userName) {
+        Integer userId = idsByName.get(userName);
+        if (userId == null) {
+            User user = userMapper.getUser(userName);
+            if (user != null) {
+                remember(user.getUserId(), user.getUserName());
+                userId = user.getUserId();
+            }
+        }
+        return userId;
+    }
+
+    /**
+     * Records a user that is already known, e.g. one that was just read or inserted, and returns the cached
+     * instance of its name.
+     */
+    public String remember(int userId, String userName) {
+        String cached = namesById.putIfAbsent(userId, userName);
+        if (cached != null) {
+            return cached;
+        }
+        // ids are never reused, so a newer id for a name wins, e.g. after a bulk import into an emptied store
+        idsByName.put(userName, userId);
+        return userName;
+    }
+
+    /**
+     * Fills in the author's name of a message read from storage.
+     */
+    public ChatMessage named(ChatMessage chatMessage) {
+        if (chatMessage.getUserName() == null && chatMessage.getUserId() != null) {
+            chatMessage.setUserName(getUserName(chatMessage.getUserId()));
+        }
+        return chatMessage;
+    }
+
+    public List<ChatMessage> named(List<ChatMessage> chatMessages) {
+        chatMessages.forEach(this::named);
+        return chatMessages;
+    }
+
+    /**
+     * Names messages lazily as they are iterated, for cursors that must not be materialized.
+     */
+    public Iterable<ChatMessage> named(Iterable<ChatMessage> chatMessages) {
+        return () -> {
+            Iterator<ChatMessage> iterator = chatMessages.iterator();
+            return new Iterator<ChatMessage>() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public ChatMessage next() {
+                    return named(iterator.next());
+                }
+            };
+        };
+    }
+
+    public int size() {
+        return namesById.size();
+    }
+}
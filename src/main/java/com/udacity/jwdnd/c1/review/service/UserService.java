@@ -4,6 +4,7 @@ import com.udacity.jwdnd.c1.review.mapper.UserMapper;
 import com.udacity.jwdnd.c1.review.model.User;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -11,16 +12,22 @@ import org.springframework.stereotype.Service;
 
 import java.security.SecureRandom;
 import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class UserService {
     Logger logger = LoggerFactory.getLogger(UserService.class);
     private UserMapper userMapper;
     private HashService hashService;
+    private UserNameBloomFilter userNameBloomFilter;
+    private BlockingWorkExecutor blockingWork;
 
-    public UserService(UserMapper userMapper, HashService hashService) {
+    public UserService(UserMapper userMapper, HashService hashService, UserNameBloomFilter userNameBloomFilter,
+                       BlockingWorkExecutor blockingWork) {
         this.userMapper = userMapper;
         this.hashService = hashService;
+        this.userNameBloomFilter = userNameBloomFilter;
+        this.blockingWork = blockingWork;
     }
 
     public String getCurrentUsername() {
@@ -30,6 +37,8 @@ public class UserService {
             logger.info("principal instanceof User: " + (principal instanceof User) );
             if (principal instanceof User) {
                 return ((User) principal).getUserName();
+            } else if (principal instanceof UserDetails) {
+                return ((UserDetails) principal).getUsername();
             } else {
                 return principal.toString();
             }
@@ -38,23 +47,67 @@ public class UserService {
         return null;
     }
 
+    /**
+     * Inserts the user, relying on the unique index on USERS.username rather than a prior lookup, so two
+     * concurrent signups for one name cannot both succeed.
+     *
+     * @throws UserNameTakenException if the name is already taken
+     */
     public int createUser(User user) {
+        String encodedSalt = newSalt();
+        int iterations = hashService.getTargetIterations();
+        int keyLength = hashService.getKeyLength();
+        String hashedPassword = hashService.getHashedValue(user.getPassword(), encodedSalt, iterations, keyLength);
+        return insertUser(user, encodedSalt, hashedPassword, iterations, keyLength);
+
+//        return userMapper.insert(new User(null, user.getUserName(), encodedSalt, hashedPassword,
+//                user.getFirstName(), user.getLastName()));
+    }
+
+    /**
+     * {@link #createUser(User)} for async handlers: the hash runs on the hashing pool and the insert on
+     * {@link BlockingWorkExecutor}, and no thread waits for either. Fails the future with the exceptions
+     * {@code createUser} would throw.
+     */
+    public CompletableFuture<Integer> createUserAsync(User user) {
+        String encodedSalt = newSalt();
+        int iterations = hashService.getTargetIterations();
+        int keyLength = hashService.getKeyLength();
+        return hashService.hashAsync(user.getPassword(), encodedSalt, iterations, keyLength)
+                .thenCompose(hashedPassword -> blockingWork.supply(
+                        () -> insertUser(user, encodedSalt, hashedPassword, iterations, keyLength)));
+    }
+
+    private String newSalt() {
         SecureRandom random = new SecureRandom();
         byte[] salt = new byte[16];
         random.nextBytes(salt);
-        String encodedSalt = Base64.getEncoder().encodeToString(salt);
-        String hashedPassword = hashService.getHashedValue(user.getPassword(), encodedSalt);
+        return Base64.getEncoder().encodeToString(salt);
+    }
 
-        int userId = userMapper.insert(new User(null, user.getUserName(), encodedSalt, hashedPassword,
-                user.getFirstName(), user.getLastName()));
-        logger.info("[[[[[[[[[[[[[[[[ user " + user.getUserName() + " existes: " + !(isUsernameAvailable(user.getUserName())) );
+    private int insertUser(User user, String encodedSalt, String hashedPassword, int iterations, int keyLength) {
+        int userId;
+        try {
+            userId = userMapper.insert(new User(null, user.getUserName(), encodedSalt, hashedPassword,
+                    user.getFirstName(), user.getLastName(), iterations, keyLength));
+        } catch (DuplicateKeyException e) {
+            // taken on another node, or by a signup racing this one
+            userNameBloomFilter.add(user.getUserName());
+            throw new UserNameTakenException("The username already exists.");
+        }
+        userNameBloomFilter.add(user.getUserName());
+        logger.info("Created user " + user.getUserName());
         return userId;
-
-//        return userMapper.insert(new User(null, user.getUserName(), encodedSalt, hashedPassword,
-//                user.getFirstName(), user.getLastName()));
     }
 
+    /**
+     * Answers from {@link UserNameBloomFilter} when it can and only queries USERS for names that might be
+     * taken. The answer is advisory; {@link #createUser(User)} still fails if the name is gone by then.
+     */
     public boolean isUsernameAvailable(String username) {
+        if (username != null && !userNameBloomFilter.mightContain(username)) {
+            return true;
+        }
         return userMapper.getUser(username) == null;
     }
 }
@@ -0,0 +1,12 @@
+-- Moves message authorship from MESSAGES.username to a foreign key on USERS.userid. Run it once, before starting
+-- the new version, against a file database created by an older one, e.g.
+--   java -cp h2-1.4.200.jar org.h2.tools.RunScript -url jdbc:h2:./data/chat -script migrate-messages-userid.sql
+-- Authors without an account get a user without a password, which cannot log in.
+INSERT INTO USERS (username)
+ SELECT DISTINCT m.username FROM MESSAGES m WHERE NOT EXISTS (SELECT 1 FROM USERS u WHERE u.username = m.username);
+ALTER TABLE MESSAGES ADD COLUMN IF NOT EXISTS userid INT;
+UPDATE MESSAGES m SET userid = (SELECT MIN(u.userid) FROM USERS u WHERE u.username = m.username);
+ALTER TABLE MESSAGES ALTER COLUMN userid SET NOT NULL;
+ALTER TABLE MESSAGES ADD FOREIGN KEY (userid) REFERENCES USERS (userid);
+CREATE INDEX IF NOT EXISTS idx_messages_userid ON MESSAGES (userid);
+ALTER TABLE MESSAGES DROP COLUMN username;
@@ -4,10 +4,19 @@ CREATE TABLE IF NOT EXISTS USERS (
  salt VARCHAR,
  password VARCHAR,
  firstname VARCHAR(20),
- lastname VARCHAR(20)
+ lastname VARCHAR(20),
+ hashiterations INT NOT NULL DEFAULT 5000,
+ hashkeylength INT NOT NULL DEFAULT 128
 );
+CREATE UNIQUE INDEX IF NOT EXISTS idx_users_username ON USERS (username);
 CREATE TABLE IF NOT EXISTS MESSAGES (
  messageid INT PRIMARY KEY auto_increment,
- username VARCHAR NOT NULL,
- messagetext VARCHAR NOT NULL
-);
\ No newline at end of file
+ room VARCHAR(20) NOT NULL DEFAULT 'general',
+ roomseq INT NOT NULL,
+ userid INT NOT NULL REFERENCES USERS (userid),
+ messagetext VARCHAR NOT NULL,
+ messagetype VARCHAR(10),
+ createdat TIMESTAMP
+);
+CREATE UNIQUE INDEX IF NOT EXISTS idx_messages_room_seq ON MESSAGES (room, roomseq DESC);
+CREATE INDEX IF NOT EXISTS idx_messages_userid ON MESSAGES (userid);
@@ -0,0 +1,126 @@
+package com.udacity.jwdnd.c1.review;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.CookieManager;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Launches the application in a JVM of its own with the fast-startup profile, the way an autoscaled node
+ * starts, and fails if the first successful login comes later than {@code startup.login-budget-ms} after the
+ * launch. The user is signed up on the way, so the time includes one signup. The node's output, with its
+ * startup report, goes to {@code target/startup-budget.log}. Run by {@code mvn -Pfast-startup verify}.
+ */
+class StartupBudgetIT {
+	private static final Pattern CSRF_TOKEN = Pattern.compile("name=\"_csrf\"\\s+value=\"([^\"]+)\"");
+
+	private String baseUrl;
+	private HttpClient client = HttpClient.newBuilder()
+			.cookieHandler(new CookieManager())
+			.followRedirects(HttpClient.Redirect.NEVER)
+			.build();
+
+	@Test
+	void firstLoginIsWithinTheStartupBudget() throws Exception {
+		long budgetMillis = Long.getLong("startup.login-budget-ms", 20000);
+		int port = freePort();
+		baseUrl = "http://localhost:" + port;
+		Path log = Paths.get("target", "startup-budget.log");
+		Files.createDirectories(log.toAbsolutePath().getParent());
+
+		String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+		ProcessBuilder launch = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+				ReviewApplication.class.getName(),
+				"--spring.profiles.active=fast-startup", "--server.port=" + port, "--management.server.port=0",
+				"--spring.datasource.url=jdbc:h2:mem:startup-budget")
+				.redirectErrorStream(true)
+				.redirectOutput(log.toFile());
+		long start = System.nanoTime();
+		Process node = launch.start();
+		try {
+			HttpResponse<String> signupPage = null;
+			while (signupPage == null) {
+				assertTrue(node.isAlive(), "The node exited during startup, see " + log);
+				assertTrue(elapsedMillis(start) < budgetMillis, "The node did not answer within the budget");
+				try {
+					signupPage = send(get("/signup"));
+				} catch (IOException e) {
+					// not listening yet
+					Thread.sleep(20);
+				}
+			}
+			assertEquals(200, signupPage.statusCode());
+
+			HttpResponse<String> signup = send(post("/signup", "firstName", "Startup", "lastName", "Budget",
+					"userName", "startup-budget", "password", "startup-password", "_csrf", csrfToken(signupPage)));
+			assertEquals(200, signup.statusCode());
+			HttpResponse<String> loginPage = send(get("/login"));
+			HttpResponse<String> login = send(post("/login", "username", "startup-budget",
+					"password", "startup-password", "_csrf", csrfToken(loginPage)));
+			long firstLoginMillis = elapsedMillis(start);
+
+			assertEquals(302, login.statusCode());
+			assertTrue(login.headers().firstValue("Location").orElse("").endsWith("/chat"), "Login failed");
+			assertTrue(firstLoginMillis <= budgetMillis,
+					"First login " + firstLoginMillis + " ms after launch, budget " + budgetMillis + " ms");
+		} finally {
+			node.destroy();
+			if (!node.waitFor(10, TimeUnit.SECONDS)) {
+				node.destroyForcibly();
+			}
+		}
+	}
+
+	private static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+
+	private static long elapsedMillis(long start) {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+	}
+
+	private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+		return client.send(request, HttpResponse.BodyHandlers.ofString());
+	}
+
+	private HttpRequest get(String path) {
+		return HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build();
+	}
+
+	private HttpRequest post(String path, String... fields) {
+		StringJoiner form = new StringJoiner("&");
+		for (int i = 0; i < fields.length; i += 2) {
+			form.add(URLEncoder.encode(fields[i], StandardCharsets.UTF_8) + "="
+					+ URLEncoder.encode(fields[i + 1], StandardCharsets.UTF_8));
+		}
+		return HttpRequest.newBuilder(URI.create(baseUrl + path))
+				.header("Content-Type", "application/x-www-form-urlencoded")
+				.POST(HttpRequest.BodyPublishers.ofString(form.toString()))
+				.build();
+	}
+
+	private String csrfToken(HttpResponse<String> response) {
+		Matcher matcher = CSRF_TOKEN.matcher(response.body());
+		assertTrue(matcher.find(), "No CSRF token in the response to " + response.uri());
+		return matcher.group(1);
+	}
+}
@@ -0,0 +1,113 @@
+package com.udacity.jwdnd.c1.review.archive;
+
+import com.udacity.jwdnd.c1.review.model.ChatMessage;
+import com.udacity.jwdnd.c1.review.model.MessageType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class MessageArchiveTest {
+	@TempDir
+	Path directory;
+
+	@Test
+	void pagesReadAcrossSegments() throws IOException {
+		MessageArchive archive = open();
+		archive.append("general", messages("general", 1, 10));
+		archive.append("general", messages("general", 11, 20));
+
+		assertEquals(20, archive.getLastRoomSeq("general"));
+		assertNull(archive.getLastRoomSeq("other"));
+		assertEquals(List.of(8, 9, 10, 11, 12), seqs(archive.getRoomMessagesBefore("general", 13, 5)));
+		assertEquals(List.of(9, 10, 11, 12, 13), seqs(archive.getRoomMessagesAfter("general", 8, 5)));
+		assertEquals(List.of(19, 20), seqs(archive.getRoomMessagesAfter("general", 18, 5)));
+
+		ChatMessage first = archive.getRoomMessagesAfter("general", 0, 1).get(0);
+		assertEquals("message 1", first.getMessageText());
+		assertEquals(MessageType.SHOUT, first.getMessageType());
+		assertEquals(Instant.ofEpochMilli(1000), first.getCreatedAt());
+		assertEquals(7, first.getUserId());
+	}
+
+	@Test
+	void smallSegmentsAreMergedWithoutChangingReads() throws IOException {
+		MessageArchive archive = open();
+		for (int seq = 1; seq <= 20; seq += 4) {
+			archive.append("general", messages("general", seq, seq + 3));
+		}
+		assertEquals(5, archive.getSegmentCount());
+
+		archive.compact("general");
+
+		assertEquals(1, archive.getSegmentCount());
+		assertEquals(20, archive.getMessageCount());
+		assertEquals(seqRange(1, 20), seqs(StreamSupport.stream(
+				archive.streamRoomMessages("general").spliterator(), false).collect(Collectors.toList())));
+	}
+
+	@Test
+	void reopenedArchiveDropsLeftoversOfInterruptedWrites() throws IOException {
+		MessageArchive archive = open();
+		archive.append("general", messages("general", 1, 10));
+		archive.append("general", messages("general", 11, 20));
+		archive.append("~odd room", messages("~odd room", 1, 3));
+		Path roomDirectory = directory.resolve("general");
+		// a merge that wrote its result but did not get to delete what it replaced, and a write cut short
+		Files.copy(roomDirectory.resolve(ArchiveSegment.fileName(1, 10)), roomDirectory.resolve("partial.tmp"));
+		ArchiveSegment.write(roomDirectory, "general", messages("general", 1, 20));
+
+		MessageArchive reopened = open();
+
+		assertEquals(2, reopened.getSegmentCount());
+		assertEquals(23, reopened.getMessageCount());
+		assertEquals(3, reopened.getLastRoomSeq("~odd room"));
+		assertFalse(Files.exists(roomDirectory.resolve("partial.tmp")));
+		assertEquals(seqRange(1, 20), seqs(reopened.getRoomMessagesAfter("general", 0, 100)));
+		assertEquals(List.of(2003, 5), reopened.getMessagesByIds(List.of(5, 2003)).stream()
+				.map(ChatMessage::getMessageId).collect(Collectors.toList()));
+	}
+
+	private MessageArchive open() throws IOException {
+		MessageArchive archive = new MessageArchive(directory.toString(), 40, 4);
+		archive.open();
+		return archive;
+	}
+
+	// message ids are the sequence number, plus 2000 outside the general room
+	private static List<ChatMessage> messages(String room, int firstSeq, int lastSeq) {
+		List<ChatMessage> messages = new ArrayList<>();
+		for (int seq = firstSeq; seq <= lastSeq; seq++) {
+			int messageId = "general".equals(room) ? seq : 2000 + seq;
+			ChatMessage chatMessage = new ChatMessage(messageId, room, seq, null, "message " + seq);
+			chatMessage.setUserId(7);
+			chatMessage.setMessageType(MessageType.SHOUT);
+			chatMessage.setCreatedAt(Instant.ofEpochMilli(seq * 1000L));
+			messages.add(chatMessage);
+		}
+		return messages;
+	}
+
+	private static List<Integer> seqs(List<ChatMessage> messages) {
+		return messages.stream().map(ChatMessage::getRoomSeq).collect(Collectors.toList());
+	}
+
+	private static List<Integer> seqRange(int first, int last) {
+		List<Integer> seqs = new ArrayList<>();
+		for (int seq = first; seq <= last; seq++) {
+			seqs.add(seq);
+		}
+		return seqs;
+	}
+}
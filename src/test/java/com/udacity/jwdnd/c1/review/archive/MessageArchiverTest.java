@@ -0,0 +1,106 @@
+package com.udacity.jwdnd.c1.review.archive;
+
+import com.udacity.jwdnd.c1.review.mapper.UserMapper;
+import com.udacity.jwdnd.c1.review.model.ChatMessage;
+import com.udacity.jwdnd.c1.review.model.MessagePage;
+import com.udacity.jwdnd.c1.review.model.MessageType;
+import com.udacity.jwdnd.c1.review.model.User;
+import com.udacity.jwdnd.c1.review.service.BulkTransferService;
+import com.udacity.jwdnd.c1.review.service.MessageService;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:retention;DB_CLOSE_DELAY=-1",
+		"chat.retention.enabled=true",
+		"chat.retention.hot-max-age-days=0",
+		"chat.retention.hot-messages=10",
+		"chat.retention.interval-ms=3600000",
+		"chat.retention.batch-size=7",
+		"chat.retention.max-messages-per-second=0",
+		"chat.retention.archive.directory=" + MessageArchiverTest.ARCHIVE,
+		"chat.page-size=8",
+		// small enough that older pages miss the buffer and are read from storage
+		"chat.recent-buffer.capacity=5"
+})
+class MessageArchiverTest {
+	static final String ARCHIVE = "target/retention-test-archive";
+
+	@Autowired
+	private MessageArchiver messageArchiver;
+
+	@Autowired
+	private MessageService messageService;
+
+	@Autowired
+	private BulkTransferService bulkTransferService;
+
+	@Autowired
+	private UserMapper userMapper;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@BeforeAll
+	static void removeOldArchive() throws IOException {
+		FileSystemUtils.deleteRecursively(Paths.get(ARCHIVE));
+	}
+
+	@Test
+	void archivedMessagesAreStillReadable() throws IOException {
+		userMapper.insert(new User(null, "retention-user", "salt", "hash", "Retention", "User", 5000, 128));
+		for (int i = 1; i <= 40; i++) {
+			messageService.addChatMessage("retention-user", "retention", "message " + i, MessageType.SAY);
+		}
+
+		assertEquals(30, messageArchiver.archive());
+		assertEquals(0, messageArchiver.archive());
+		assertEquals(10, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM MESSAGES", Integer.class));
+
+		// entirely archived, partly archived, and entirely hot pages
+		assertEquals(seqRange(4, 11), seqs(messageService.getMessagesBefore("retention", 12)));
+		assertEquals(seqRange(25, 32), seqs(messageService.getMessagesBefore("retention", 33)));
+		assertEquals(seqRange(1, 8), seqs(messageService.getMessagesAfter("retention", 0)));
+		assertEquals(seqRange(29, 36), seqs(messageService.getMessagesAfter("retention", 28)));
+
+		List<ChatMessage> history = new ArrayList<>();
+		messageService.streamChatMessages("retention", messages -> messages.forEach(history::add));
+		assertEquals(seqRange(1, 40), seqs(history));
+		assertEquals("retention-user", history.get(0).getUserName());
+
+		// as left behind by a run that archived the row but did not get to delete it
+		jdbcTemplate.update("INSERT INTO MESSAGES (room, roomseq, userid, messagetext) "
+				+ "SELECT 'retention', 1, userid, 'message 1' FROM USERS WHERE username = 'retention-user'");
+		long users = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM USERS", Long.class);
+		assertEquals(users + 40, bulkTransferService.export(OutputStream.nullOutputStream()));
+	}
+
+	private static List<Integer> seqs(MessagePage page) {
+		return seqs(page.getMessages());
+	}
+
+	private static List<Integer> seqs(List<ChatMessage> messages) {
+		return messages.stream().map(ChatMessage::getRoomSeq).collect(Collectors.toList());
+	}
+
+	private static List<Integer> seqRange(int first, int last) {
+		List<Integer> seqs = new ArrayList<>();
+		for (int seq = first; seq <= last; seq++) {
+			seqs.add(seq);
+		}
+		return seqs;
+	}
+}
@@ -0,0 +1,82 @@
+package com.udacity.jwdnd.c1.review.config;
+
+import com.udacity.jwdnd.c1.review.mapper.UserMapper;
+import com.udacity.jwdnd.c1.review.model.User;
+import com.udacity.jwdnd.c1.review.service.AuthTokenService;
+import com.udacity.jwdnd.c1.review.service.UserService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import javax.servlet.http.Cookie;
+
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.cookie;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.redirectedUrl;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:security-config;DB_CLOSE_DELAY=-1")
+@AutoConfigureMockMvc
+class SecurityConfigTest {
+	private static final String CSRF_COOKIE = "XSRF-TOKEN";
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private UserMapper userMapper;
+
+	@Autowired
+	private UserService userService;
+
+	@Autowired
+	private AuthTokenService authTokenService;
+
+	@Test
+	void csrfTokenOutlivesRequestsAuthenticatedByTheTokenCookie() throws Exception {
+		createUser("token-holder", "secret");
+		Cookie token = new Cookie(AuthTokenService.COOKIE_NAME, authTokenService.issue("token-holder"));
+		Cookie csrf = new Cookie(CSRF_COOKIE, "kept-across-requests");
+
+		mockMvc.perform(get("/chat/stream").param("room", "csrf").cookie(token, csrf))
+				.andExpect(request().asyncStarted())
+				.andExpect(cookie().doesNotExist(CSRF_COOKIE));
+
+		MvcResult started = mockMvc.perform(post("/chat").cookie(token, csrf)
+				.param("room", "csrf").param("messageText", "after the stream").param("messageType", "SAY")
+				.param("idempotencyKey", "csrf-key").param("_csrf", "kept-across-requests"))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		mockMvc.perform(asyncDispatch(started))
+				.andExpect(redirectedUrl("/chat?room=csrf"));
+	}
+
+	@Test
+	void loginStillIssuesANewCsrfToken() throws Exception {
+		createUser("csrf-login", "secret");
+		Cookie csrf = new Cookie(CSRF_COOKIE, "before-login");
+
+		MvcResult login = mockMvc.perform(post("/login").cookie(csrf)
+				.param("username", "csrf-login").param("password", "secret").param("_csrf", "before-login"))
+				.andExpect(redirectedUrl("/chat"))
+				.andExpect(cookie().exists(AuthTokenService.COOKIE_NAME))
+				.andReturn();
+
+		Cookie rotated = login.getResponse().getCookie(CSRF_COOKIE);
+		assertNotNull(rotated);
+		assertNotEquals("before-login", rotated.getValue());
+	}
+
+	private void createUser(String userName, String password) {
+		if (userMapper.getUser(userName) == null) {
+			userService.createUser(new User(null, userName, null, password, "Csrf", "Tester"));
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package com.udacity.jwdnd.c1.review.controller;
+
+import com.udacity.jwdnd.c1.review.mapper.UserMapper;
+import com.udacity.jwdnd.c1.review.model.User;
+import com.udacity.jwdnd.c1.review.service.AuthTokenService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.cookie;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.model;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.redirectedUrl;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:async-handlers;DB_CLOSE_DELAY=-1",
+		"chat.web.async.enabled=true",
+		"chat.web.async.threads=2"
+})
+@AutoConfigureMockMvc
+class AsyncHandlersTest {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private UserMapper userMapper;
+
+	@Test
+	void signupAndLoginAreAnsweredAsynchronously() throws Exception {
+		completeAsync(post("/signup").with(csrf()).param("firstName", "Async").param("lastName", "User")
+				.param("userName", "async-user").param("password", "secret"))
+				.andExpect(status().isOk())
+				.andExpect(model().attribute("signupSuccess", true));
+		completeAsync(post("/signup").with(csrf()).param("firstName", "Async").param("lastName", "User")
+				.param("userName", "async-user").param("password", "other"))
+				.andExpect(model().attribute("signupError", "The username already exists."));
+
+		completeAsync(post("/login").with(csrf()).param("username", "async-user").param("password", "wrong"))
+				.andExpect(redirectedUrl("/login?error"))
+				.andExpect(cookie().doesNotExist(AuthTokenService.COOKIE_NAME));
+		completeAsync(post("/login").with(csrf()).param("username", "async-user").param("password", "secret"))
+				.andExpect(redirectedUrl("/chat"))
+				.andExpect(cookie().exists(AuthTokenService.COOKIE_NAME));
+	}
+
+	@Test
+	@WithMockUser("async-poster")
+	void postedMessageIsShownOnTheAsyncChatPage() throws Exception {
+		if (userMapper.getUser("async-poster") == null) {
+			userMapper.insert(new User(null, "async-poster", "salt", "hash", "Async", "Poster", 5000, 128));
+		}
+
+		completeAsync(post("/chat").with(csrf())
+				.param("room", "async").param("messageText", "off the servlet thread").param("messageType", "SAY")
+				.param("idempotencyKey", "async-key"))
+				.andExpect(redirectedUrl("/chat?room=async"));
+
+		completeAsync(get("/chat").param("room", "async"))
+				.andExpect(status().isOk())
+				.andExpect(content().string(containsString("async-poster: off the servlet thread")));
+	}
+
+	private ResultActions completeAsync(RequestBuilder requestBuilder) throws Exception {
+		MvcResult started = mockMvc.perform(requestBuilder)
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		return mockMvc.perform(asyncDispatch(started));
+	}
+}
@@ -0,0 +1,109 @@
+package com.udacity.jwdnd.c1.review.controller;
+
+import com.udacity.jwdnd.c1.review.mapper.UserMapper;
+import com.udacity.jwdnd.c1.review.model.MessageType;
+import com.udacity.jwdnd.c1.review.model.User;
+import com.udacity.jwdnd.c1.review.service.MessageService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
+
+import javax.servlet.http.Cookie;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.redirectedUrl;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@WithMockUser("etag-tester")
+class MessageControllerTest {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private MessageService messageService;
+
+	@Autowired
+	private UserMapper userMapper;
+
+	@BeforeEach
+	void createPosters() {
+		if (userMapper.getUser("someone-else") == null) {
+			userMapper.insert(new User(null, "someone-else", "salt", "hash", "Someone", "Else", 5000, 128));
+		}
+		if (userMapper.getUser("etag-tester") == null) {
+			userMapper.insert(new User(null, "etag-tester", "salt", "hash", "Etag", "Tester", 5000, 128));
+		}
+	}
+
+	@Test
+	void resubmittedFormIsRedirectedButStoredOnce() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			complete(post("/chat").with(csrf())
+					.param("room", "prg").param("messageText", "only once").param("messageType", "SAY")
+					.param("idempotencyKey", "prg-key"))
+					.andExpect(status().isFound())
+					.andExpect(redirectedUrl("/chat?room=prg"));
+		}
+
+		assertEquals(1, messageService.getLatestMessages("prg").getMessages().size());
+	}
+
+	@Test
+	void unchangedRoomIsAnsweredWithNotModified() throws Exception {
+		MockHttpServletResponse first = complete(get("/chat").param("room", "etag-unchanged"))
+				.andExpect(status().isOk())
+				.andExpect(header().string(HttpHeaders.CACHE_CONTROL, "private, no-cache"))
+				.andReturn().getResponse();
+		Cookie[] cookies = first.getCookies();
+
+		mockMvc.perform(get("/chat").param("room", "etag-unchanged").cookie(cookies)
+				.header(HttpHeaders.IF_NONE_MATCH, first.getHeader(HttpHeaders.ETAG)))
+				.andExpect(status().isNotModified())
+				.andExpect(content().string(""));
+	}
+
+	@Test
+	void newMessageChangesTheEtag() throws Exception {
+		MockHttpServletResponse first = complete(get("/chat").param("room", "etag-changed"))
+				.andReturn().getResponse();
+		String etag = first.getHeader(HttpHeaders.ETAG);
+
+		messageService.addChatMessage("someone-else", "etag-changed", "hello", MessageType.SAY);
+
+		String newEtag = complete(get("/chat").param("room", "etag-changed").cookie(first.getCookies())
+				.header(HttpHeaders.IF_NONE_MATCH, etag))
+				.andExpect(status().isOk())
+				.andExpect(content().string(containsString("someone-else: hello")))
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+		assertNotEquals(etag, newEtag);
+	}
+
+	// handlers return a future in blocking mode too, already completed on the servlet thread
+	private ResultActions complete(RequestBuilder requestBuilder) throws Exception {
+		MvcResult started = mockMvc.perform(requestBuilder)
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		return mockMvc.perform(asyncDispatch(started));
+	}
+}
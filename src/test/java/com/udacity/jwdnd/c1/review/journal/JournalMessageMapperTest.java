@@ -0,0 +1,107 @@
+package com.udacity.jwdnd.c1.review.journal;
+
+import com.udacity.jwdnd.c1.review.mapper.MessageMapper;
+import com.udacity.jwdnd.c1.review.mapper.MessageMapperContractTest;
+import com.udacity.jwdnd.c1.review.model.ChatMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JournalMessageMapperTest extends MessageMapperContractTest {
+	private static final int SEGMENT_SIZE = 4096;
+
+	@TempDir
+	Path directory;
+
+	private MessageJournal messageJournal;
+	private JournalMessageMapper messageMapper;
+
+	@BeforeEach
+	void openJournal() throws IOException {
+		messageJournal = new MessageJournal(directory, SEGMENT_SIZE, false);
+		messageMapper = new JournalMessageMapper(messageJournal);
+	}
+
+	@AfterEach
+	void closeJournal() throws IOException {
+		messageJournal.close();
+	}
+
+	@Override
+	protected MessageMapper messageMapper() {
+		return messageMapper;
+	}
+
+	@Override
+	protected int authorId() {
+		return 42;
+	}
+
+	@Test
+	void rollsSegmentsAndReadsAcrossThem() throws IOException {
+		List<ChatMessage> inserted = insertMessages(200);
+
+		try (Stream<Path> files = Files.list(directory)) {
+			assertTrue(files.count() > 1);
+		}
+		assertEquals(ids(inserted), ids(allMessages()));
+		assertEquals(ids(inserted.subList(50, 150)),
+				ids(messageMapper.getMessagesBefore(inserted.get(150).getMessageId(), 100)));
+	}
+
+	@Test
+	void recoversEverythingAfterReopening() throws IOException {
+		insertMessages(150);
+		reopen();
+
+		assertEquals(150, messageMapper.getLastRoomSeq("contract"));
+		ChatMessage next = message("contract", 151, "after restart");
+		messageMapper.insert(next);
+
+		assertEquals(151, next.getMessageId());
+		assertEquals(151, messageMapper.getLatestRoomMessages("contract", 1).get(0).getMessageId());
+		assertEquals(151, allMessages().size());
+	}
+
+	@Test
+	void dropsATornTailRecordOnRecovery() throws IOException {
+		insertMessages(3);
+		messageJournal.close();
+		corruptLastWrittenByte(directory.resolve(JournalSegment.fileName(1)));
+		reopen();
+
+		assertEquals(2, messageMapper.getLastRoomSeq("contract"));
+		ChatMessage next = message("contract", 3, "rewritten");
+		messageMapper.insert(next);
+
+		List<ChatMessage> all = allMessages();
+		assertEquals(3, all.size());
+		assertEquals(3, next.getMessageId());
+		assertEquals("rewritten", all.get(2).getMessageText());
+	}
+
+	private void reopen() throws IOException {
+		messageJournal.close();
+		openJournal();
+	}
+
+	private static void corruptLastWrittenByte(Path segment) throws IOException {
+		byte[] bytes = Files.readAllBytes(segment);
+		int last = bytes.length - 1;
+		while (bytes[last] == 0) {
+			last--;
+		}
+		bytes[last] ^= 0x5A;
+		Files.write(segment, bytes);
+	}
+}
@@ -0,0 +1,20 @@
+package com.udacity.jwdnd.c1.review.loadtest;
+
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * {@link ChatLoadIT} against the asynchronous chat, signup and login handlers, with the same users and Tomcat
+ * threads. Its report goes to {@code loadtest.async-report-file} and next to the blocking one.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"server.tomcat.threads.max=${loadtest.server-threads:8}",
+		"chat.web.async.enabled=true",
+		"spring.datasource.url=jdbc:h2:mem:async-loadtest;DB_CLOSE_DELAY=-1"
+})
+class AsyncChatLoadIT extends ChatLoadIT {
+
+	@Override
+	protected String mode() {
+		return "async";
+	}
+}
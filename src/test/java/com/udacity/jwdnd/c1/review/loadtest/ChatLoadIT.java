@@ -0,0 +1,103 @@
+package com.udacity.jwdnd.c1.review.loadtest;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Boots the application on a random port against its in-memory H2 database and runs
+ * {@code loadtest.users} concurrent {@link VirtualUser}s through signup, login and chat. Started by
+ * {@code mvn -Ploadtest verify}; the per-endpoint report goes to {@code loadtest.blocking-report-file}.
+ * <p>
+ * Tomcat gets {@code loadtest.server-threads} request threads, far fewer than there are users, so the blocking
+ * handlers measured here run out of them while the asynchronous ones measured by {@link AsyncChatLoadIT} should
+ * not. Whichever of the two runs last writes both reports, one after the other, to {@code loadtest.report-file}.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+		properties = "server.tomcat.threads.max=${loadtest.server-threads:8}")
+class ChatLoadIT {
+	private static final List<String> MODES = List.of("blocking", "async");
+
+	private Logger logger = LoggerFactory.getLogger(ChatLoadIT.class);
+
+	@LocalServerPort
+	private int port;
+
+	@Value("${server.tomcat.threads.max}")
+	private int serverThreads;
+
+	@Test
+	void virtualUsersSignUpLogInAndChat() throws Exception {
+		int users = Integer.getInteger("loadtest.users", 100);
+		int messagesPerUser = Integer.getInteger("loadtest.messages-per-user", 20);
+		long thinkTimeMillis = Long.getLong("loadtest.think-time-ms", 100);
+		long rampUpMillis = Long.getLong("loadtest.ramp-up-ms", 2000);
+		LatencyRecorder recorder = new LatencyRecorder();
+		ExecutorService executor = Executors.newFixedThreadPool(users);
+		List<Future<Void>> results = new ArrayList<>(users);
+		long start = System.nanoTime();
+		for (int i = 0; i < users; i++) {
+			VirtualUser user = new VirtualUser("http://localhost:" + port, "loaduser" + i, messagesPerUser,
+					thinkTimeMillis, recorder);
+			long delay = rampUpMillis * i / users;
+			results.add(executor.submit(() -> {
+				Thread.sleep(delay);
+				return user.call();
+			}));
+		}
+		try {
+			for (Future<Void> result : results) {
+				result.get(10, TimeUnit.MINUTES);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		long elapsed = System.nanoTime() - start;
+
+		String report = mode() + " handlers, " + users + " users, " + serverThreads + " Tomcat threads\n"
+				+ recorder.report(elapsed);
+		Path reportFile = reportFile(mode());
+		Files.createDirectories(reportFile.toAbsolutePath().getParent());
+		Files.writeString(reportFile, report);
+		writeComparison();
+		logger.info("Load test of " + report);
+		assertEquals(0, recorder.getErrorCount(), report);
+	}
+
+	protected String mode() {
+		return "blocking";
+	}
+
+	private static Path reportFile(String mode) {
+		return Paths.get(System.getProperty("loadtest." + mode + "-report-file",
+				"target/loadtest-" + mode + "-report.txt"));
+	}
+
+	private static void writeComparison() throws IOException {
+		StringBuilder comparison = new StringBuilder();
+		for (String mode : MODES) {
+			Path reportFile = reportFile(mode);
+			if (Files.exists(reportFile)) {
+				comparison.append(Files.readString(reportFile)).append(System.lineSeparator());
+			}
+		}
+		Files.writeString(Paths.get(System.getProperty("loadtest.report-file", "target/loadtest-report.txt")),
+				comparison);
+	}
+}
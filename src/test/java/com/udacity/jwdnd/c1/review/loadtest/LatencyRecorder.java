@@ -0,0 +1,84 @@
+package com.udacity.jwdnd.c1.review.loadtest;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects response times and outcomes per endpoint from all virtual users and renders them as a report.
+ */
+class LatencyRecorder {
+	private Map<String, EndpointStats> endpoints = new ConcurrentHashMap<>();
+
+	void record(String endpoint, long nanos, Outcome outcome) {
+		endpoints.computeIfAbsent(endpoint, name -> new EndpointStats()).record(nanos, outcome);
+	}
+
+	long getErrorCount() {
+		return endpoints.values().stream().mapToLong(EndpointStats::getErrors).sum();
+	}
+
+	String report(long elapsedNanos) {
+		double elapsedSeconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+		StringBuilder report = new StringBuilder(String.format("%-12s %9s %7s %9s %9s %9s %9s %9s%n",
+				"endpoint", "requests", "errors", "throttled", "req/s", "p50 ms", "p95 ms", "p99 ms"));
+		for (Map.Entry<String, EndpointStats> entry : new TreeMap<>(endpoints).entrySet()) {
+			EndpointStats stats = entry.getValue();
+			long[] sorted = stats.sortedSamples();
+			report.append(String.format("%-12s %9d %7d %9d %9.1f %9.2f %9.2f %9.2f%n",
+					entry.getKey(), sorted.length, stats.getErrors(), stats.getThrottled(),
+					sorted.length / elapsedSeconds,
+					percentileMillis(sorted, 50), percentileMillis(sorted, 95), percentileMillis(sorted, 99)));
+		}
+		report.append(String.format("elapsed %.1f s%n", elapsedSeconds));
+		return report.toString();
+	}
+
+	// nearest-rank percentile
+	private static double percentileMillis(long[] sorted, int percentile) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+		return sorted[Math.max(rank, 1) - 1] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	enum Outcome {
+		OK, THROTTLED, ERROR
+	}
+
+	private static class EndpointStats {
+		private long[] samples = new long[1024];
+		private int count;
+		private long errors;
+		private long throttled;
+
+		synchronized void record(long nanos, Outcome outcome) {
+			if (count == samples.length) {
+				samples = Arrays.copyOf(samples, count * 2);
+			}
+			samples[count++] = nanos;
+			if (outcome == Outcome.ERROR) {
+				errors++;
+			} else if (outcome == Outcome.THROTTLED) {
+				throttled++;
+			}
+		}
+
+		synchronized long[] sortedSamples() {
+			long[] sorted = Arrays.copyOf(samples, count);
+			Arrays.sort(sorted);
+			return sorted;
+		}
+
+		synchronized long getErrors() {
+			return errors;
+		}
+
+		synchronized long getThrottled() {
+			return throttled;
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package com.udacity.jwdnd.c1.review.loadtest;
+
+import com.udacity.jwdnd.c1.review.model.MessageType;
+
+import java.io.IOException;
+import java.net.CookieManager;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.StringJoiner;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * One simulated browser: signs up, logs in through the form login, then alternates between posting a message
+ * and reloading the chat page, pausing for the think time before every request.
+ */
+class VirtualUser implements Callable<Void> {
+	private static final Pattern CSRF_TOKEN = Pattern.compile("name=\"_csrf\"\\s+value=\"([^\"]+)\"");
+	private static final String PASSWORD = "load-test-password";
+	private static final String ROOM = "loadtest";
+
+	private String baseUrl;
+	private String userName;
+	private int messages;
+	private long thinkTimeMillis;
+	private LatencyRecorder recorder;
+	private HttpClient client;
+
+	VirtualUser(String baseUrl, String userName, int messages, long thinkTimeMillis, LatencyRecorder recorder) {
+		this.baseUrl = baseUrl;
+		this.userName = userName;
+		this.messages = messages;
+		this.thinkTimeMillis = thinkTimeMillis;
+		this.recorder = recorder;
+		this.client = HttpClient.newBuilder()
+				.cookieHandler(new CookieManager())
+				.followRedirects(HttpClient.Redirect.NEVER)
+				.build();
+	}
+
+	@Override
+	public Void call() throws Exception {
+		String csrfToken = csrfToken(send("GET /signup", get("/signup"), 200));
+		send("POST /signup", post("/signup", "firstName", "Load", "lastName", "Tester", "userName", userName,
+				"password", PASSWORD, "_csrf", csrfToken), 200);
+
+		csrfToken = csrfToken(send("GET /login", get("/login"), 200));
+		HttpResponse<String> login = send("POST /login", post("/login", "username", userName,
+				"password", PASSWORD, "_csrf", csrfToken), 302);
+		if (!login.headers().firstValue("Location").orElse("").endsWith("/chat")) {
+			throw new IllegalStateException("Login failed for " + userName);
+		}
+
+		// the session and its CSRF token change on login
+		csrfToken = csrfToken(send("GET /chat", get("/chat?room=" + ROOM), 200));
+		MessageType[] messageTypes = MessageType.values();
+		for (int i = 0; i < messages; i++) {
+			MessageType messageType = messageTypes[i % messageTypes.length];
+			send("POST /chat", post("/chat", "room", ROOM,
+					"messageText", "load test message " + i + " from " + userName,
+					"messageType", messageType.name(), "idempotencyKey", UUID.randomUUID().toString(),
+					"_csrf", csrfToken), 302);
+			// follow the redirect like a browser would
+			HttpResponse<String> page = send("GET /chat", get("/chat?room=" + ROOM), 200);
+			if (page.statusCode() == 200) {
+				csrfToken = csrfToken(page);
+			}
+		}
+		return null;
+	}
+
+	private HttpResponse<String> send(String endpoint, HttpRequest request, int expectedStatus)
+			throws IOException, InterruptedException {
+		Thread.sleep(thinkTimeMillis);
+		long start = System.nanoTime();
+		HttpResponse<String> response;
+		try {
+			response = client.send(request, HttpResponse.BodyHandlers.ofString());
+		} catch (IOException e) {
+			recorder.record(endpoint, System.nanoTime() - start, LatencyRecorder.Outcome.ERROR);
+			throw e;
+		}
+		long nanos = System.nanoTime() - start;
+
+		if (response.statusCode() == expectedStatus) {
+			recorder.record(endpoint, nanos, LatencyRecorder.Outcome.OK);
+		} else if (response.statusCode() == 429) {
+			recorder.record(endpoint, nanos, LatencyRecorder.Outcome.THROTTLED);
+		} else {
+			recorder.record(endpoint, nanos, LatencyRecorder.Outcome.ERROR);
+		}
+		return response;
+	}
+
+	private HttpRequest get(String path) {
+		return HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build();
+	}
+
+	private HttpRequest post(String path, String... fields) {
+		StringJoiner form = new StringJoiner("&");
+		for (int i = 0; i < fields.length; i += 2) {
+			form.add(URLEncoder.encode(fields[i], StandardCharsets.UTF_8) + "="
+					+ URLEncoder.encode(fields[i + 1], StandardCharsets.UTF_8));
+		}
+		return HttpRequest.newBuilder(URI.create(baseUrl + path))
+				.header("Content-Type", "application/x-www-form-urlencoded")
+				.POST(HttpRequest.BodyPublishers.ofString(form.toString()))
+				.build();
+	}
+
+	private String csrfToken(HttpResponse<String> response) {
+		Matcher matcher = CSRF_TOKEN.matcher(response.body());
+		if (!matcher.find()) {
+			throw new IllegalStateException("No CSRF token in the response to " + response.uri()
+					+ " (status " + response.statusCode() + ")");
+		}
+		return matcher.group(1);
+	}
+}
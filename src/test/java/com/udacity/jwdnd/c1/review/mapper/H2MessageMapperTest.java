@@ -0,0 +1,66 @@
+package com.udacity.jwdnd.c1.review.mapper;
+
+import com.udacity.jwdnd.c1.review.model.User;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.InvocationInterceptor;
+import org.junit.jupiter.api.extension.ReflectiveInvocationContext;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@SpringBootTest
+class H2MessageMapperTest extends MessageMapperContractTest {
+	private static final AtomicInteger AUTHORS = new AtomicInteger();
+
+	// a class-level @Transactional does not reach the tests inherited from the contract; each test and its
+	// author are rolled back, and the transaction keeps the session open for the cursor tests
+	@RegisterExtension
+	InvocationInterceptor rollback = new InvocationInterceptor() {
+		@Override
+		public void interceptTestMethod(Invocation<Void> invocation, ReflectiveInvocationContext<Method> context,
+				ExtensionContext extensionContext) throws Throwable {
+			TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionDefinition());
+			try {
+				createAuthor();
+				invocation.proceed();
+			} finally {
+				transactionManager.rollback(status);
+			}
+		}
+	};
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private MessageMapper messageMapper;
+
+	@Autowired
+	private UserMapper userMapper;
+
+	private int authorId;
+
+	private void createAuthor() {
+		// user names are unique, so a new author per test even if a rollback is missed
+		User author = new User(null, "contract-tester-" + AUTHORS.incrementAndGet(), "salt", "hash",
+				"Contract", "Tester", 5000, 128);
+		userMapper.insert(author);
+		authorId = author.getUserId();
+	}
+
+	@Override
+	protected int authorId() {
+		return authorId;
+	}
+
+	@Override
+	protected MessageMapper messageMapper() {
+		return messageMapper;
+	}
+}
@@ -0,0 +1,182 @@
+package com.udacity.jwdnd.c1.review.mapper;
+
+import com.udacity.jwdnd.c1.review.model.ChatMessage;
+import com.udacity.jwdnd.c1.review.model.MessageType;
+import org.apache.ibatis.cursor.Cursor;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Behaviour every {@link MessageMapper} backend has to share. Tests only look at the messages they insert
+ * themselves, so they work against a store that already holds data.
+ */
+public abstract class MessageMapperContractTest {
+
+	protected abstract MessageMapper messageMapper();
+
+	/**
+	 * Id of an existing user to write the test messages as.
+	 */
+	protected abstract int authorId();
+
+	protected ChatMessage message(String room, int roomSeq, String messageText) {
+		ChatMessage chatMessage = new ChatMessage(null, room, roomSeq, null, messageText);
+		chatMessage.setUserId(authorId());
+		return chatMessage;
+	}
+
+	protected List<ChatMessage> insertMessages(int count) {
+		return insertMessages("contract", count);
+	}
+
+	protected List<ChatMessage> insertMessages(String room, int count) {
+		Integer lastSeq = messageMapper().getLastRoomSeq(room);
+		int roomSeq = lastSeq != null ? lastSeq : 0;
+		List<ChatMessage> inserted = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			ChatMessage chatMessage = message(room, ++roomSeq, "contract message " + i);
+			assertEquals(1, messageMapper().insert(chatMessage));
+			inserted.add(chatMessage);
+		}
+		return inserted;
+	}
+
+	protected List<ChatMessage> allMessages() throws IOException {
+		List<ChatMessage> all = new ArrayList<>();
+		try (Cursor<ChatMessage> cursor = messageMapper().streamAllMessages()) {
+			cursor.forEach(all::add);
+		}
+		return all;
+	}
+
+	protected static List<Integer> ids(List<ChatMessage> messages) {
+		return messages.stream().map(ChatMessage::getMessageId).collect(Collectors.toList());
+	}
+
+	protected static List<Integer> seqs(List<ChatMessage> messages) {
+		return messages.stream().map(ChatMessage::getRoomSeq).collect(Collectors.toList());
+	}
+
+	@Test
+	void insertAssignsIncreasingIds() {
+		List<ChatMessage> inserted = insertMessages(3);
+
+		assertNotNull(inserted.get(0).getMessageId());
+		assertTrue(inserted.get(0).getMessageId() < inserted.get(1).getMessageId());
+		assertTrue(inserted.get(1).getMessageId() < inserted.get(2).getMessageId());
+	}
+
+	@Test
+	void typeAndCreationTimeAreKept() {
+		Instant createdAt = Instant.ofEpochMilli(1_600_000_000_123L);
+		ChatMessage chatMessage = message("typed", 1, "SHOUTED");
+		chatMessage.setMessageType(MessageType.SHOUT);
+		chatMessage.setCreatedAt(createdAt);
+		messageMapper().insert(chatMessage);
+
+		ChatMessage read = messageMapper().getLatestRoomMessages("typed", 1).get(0);
+
+		assertEquals(MessageType.SHOUT, read.getMessageType());
+		assertEquals(createdAt, read.getCreatedAt());
+	}
+
+	@Test
+	void latestMessagesComeOldestFirst() {
+		List<ChatMessage> inserted = insertMessages(5);
+
+		List<ChatMessage> latest = messageMapper().getLatestMessages(3);
+
+		assertEquals(ids(inserted.subList(2, 5)), ids(latest));
+		assertEquals(authorId(), latest.get(2).getUserId());
+		assertEquals("contract message 4", latest.get(2).getMessageText());
+	}
+
+	@Test
+	void beforeAndAfterPageAroundACursor() {
+		List<ChatMessage> inserted = insertMessages(5);
+		int middle = inserted.get(2).getMessageId();
+
+		assertEquals(ids(inserted.subList(0, 2)), ids(messageMapper().getMessagesBefore(middle, 2)));
+		assertEquals(ids(inserted.subList(3, 5)), ids(messageMapper().getMessagesAfter(middle, 10)));
+		assertEquals(ids(inserted.subList(3, 4)), ids(messageMapper().getMessagesAfter(middle, 1)));
+	}
+
+	@Test
+	void messagesByIdsComeNewestFirst() {
+		List<ChatMessage> inserted = insertMessages(3);
+
+		List<ChatMessage> found = messageMapper().getMessagesByIds(
+				Arrays.asList(inserted.get(0).getMessageId(), inserted.get(2).getMessageId()));
+
+		assertEquals(Arrays.asList(inserted.get(2).getMessageId(), inserted.get(0).getMessageId()), ids(found));
+	}
+
+	@Test
+	void streamVisitsEveryMessageInOrder() throws IOException {
+		List<ChatMessage> inserted = insertMessages(3);
+
+		List<Integer> streamed = ids(allMessages());
+
+		assertTrue(streamed.containsAll(ids(inserted)));
+		assertEquals(streamed.stream().sorted().collect(Collectors.toList()), streamed);
+	}
+
+	@Test
+	void roomReadsOnlySeeTheirOwnRoom() {
+		List<ChatMessage> red = new ArrayList<>();
+		List<ChatMessage> blue = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			red.addAll(insertMessages("contract-red", 2));
+			blue.addAll(insertMessages("contract-blue", 1));
+		}
+
+		assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6), seqs(red));
+		assertEquals(6, messageMapper().getLastRoomSeq("contract-red"));
+		assertEquals(3, messageMapper().getLastRoomSeq("contract-blue"));
+		assertEquals(ids(red.subList(3, 6)), ids(messageMapper().getLatestRoomMessages("contract-red", 3)));
+		assertEquals(ids(red.subList(1, 3)), ids(messageMapper().getRoomMessagesBefore("contract-red", 4, 2)));
+		assertEquals(ids(blue.subList(1, 3)), ids(messageMapper().getRoomMessagesAfter("contract-blue", 1, 10)));
+		assertEquals("contract-blue", messageMapper().getLatestRoomMessages("contract-blue", 1).get(0).getRoom());
+	}
+
+	@Test
+	void streamRoomVisitsOnlyThatRoomInOrder() throws IOException {
+		List<ChatMessage> green = insertMessages("contract-green", 2);
+		insertMessages(2);
+		green.addAll(insertMessages("contract-green", 2));
+
+		List<Integer> streamed = new ArrayList<>();
+		try (Cursor<ChatMessage> cursor = messageMapper().streamRoomMessages("contract-green")) {
+			cursor.forEach(chatMessage -> streamed.add(chatMessage.getMessageId()));
+		}
+
+		assertEquals(ids(green), streamed);
+	}
+
+	@Test
+	void reusingARoomSequenceIsRejected() {
+		insertMessages("contract-dup", 2);
+
+		assertThrows(DuplicateKeyException.class, () ->
+				messageMapper().insert(message("contract-dup", 2, "duplicate")));
+	}
+
+	@Test
+	void unknownRoomIsEmpty() {
+		assertNull(messageMapper().getLastRoomSeq("contract-empty"));
+		assertTrue(messageMapper().getLatestRoomMessages("contract-empty", 10).isEmpty());
+	}
+}
@@ -0,0 +1,50 @@
+package com.udacity.jwdnd.c1.review.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class AuthTokenServiceTest {
+	private static final String SECRET = Base64.getEncoder().encodeToString("0123456789abcdef0123456789abcdef".getBytes());
+
+	private AuthTokenService authTokenService = new AuthTokenService(SECRET, 60);
+
+	@Test
+	void issuedTokenVerifiesToItsUser() {
+		assertEquals("alice.smith", authTokenService.verify(authTokenService.issue("alice.smith")));
+	}
+
+	@Test
+	void nodesSharingTheSecretAcceptEachOthersTokens() {
+		AuthTokenService otherNode = new AuthTokenService(SECRET, 60);
+
+		assertEquals("alice", otherNode.verify(authTokenService.issue("alice")));
+	}
+
+	@Test
+	void tamperedTokenIsRejected() {
+		String token = authTokenService.issue("alice");
+		String otherUser = Base64.getUrlEncoder().withoutPadding().encodeToString("mallory".getBytes());
+
+		assertNull(authTokenService.verify(otherUser + token.substring(token.indexOf('.'))));
+		assertNull(authTokenService.verify(token.substring(0, token.length() - 2)));
+		assertNull(authTokenService.verify("not-a-token"));
+	}
+
+	@Test
+	void tokenFromAnotherKeyIsRejected() {
+		AuthTokenService otherKey = new AuthTokenService("", 60);
+
+		assertNull(otherKey.verify(authTokenService.issue("alice")));
+	}
+
+	@Test
+	void expiredTokenIsRejected() {
+		AuthTokenService expired = new AuthTokenService(SECRET, -1);
+
+		assertNull(expired.verify(expired.issue("alice")));
+	}
+}
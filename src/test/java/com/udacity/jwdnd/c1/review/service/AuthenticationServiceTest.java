@@ -0,0 +1,50 @@
+package com.udacity.jwdnd.c1.review.service;
+
+import com.udacity.jwdnd.c1.review.mapper.UserMapper;
+import com.udacity.jwdnd.c1.review.model.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class AuthenticationServiceTest {
+
+	@Autowired
+	private AuthenticationService authenticationService;
+
+	@Autowired
+	private HashService hashService;
+
+	@Autowired
+	private UserMapper userMapper;
+
+	@Test
+	void loginUpgradesALegacyHashInTheBackground() throws InterruptedException {
+		String salt = "c2FsdHNhbHRzYWx0c2FsdA==";
+		String legacyHash = hashService.getHashedValue("secret", salt,
+				HashService.LEGACY_ITERATIONS, HashService.LEGACY_KEY_LENGTH);
+		userMapper.insert(new User(null, "legacy-user", salt, legacyHash, "Legacy", "User",
+				HashService.LEGACY_ITERATIONS, HashService.LEGACY_KEY_LENGTH));
+
+		assertNotNull(authenticationService.authenticate(
+				new UsernamePasswordAuthenticationToken("legacy-user", "secret")));
+
+		long deadline = System.currentTimeMillis() + 10_000;
+		User user = userMapper.getUser("legacy-user");
+		while (hashService.needsRehash(user.getHashIterations(), user.getHashKeyLength())) {
+			assertTrue(System.currentTimeMillis() < deadline, "password was not rehashed");
+			Thread.sleep(20);
+			user = userMapper.getUser("legacy-user");
+		}
+		assertEquals(hashService.getTargetIterations(), user.getHashIterations());
+
+		// the upgraded hash still logs in, and is not redone
+		assertNotNull(authenticationService.authenticate(
+				new UsernamePasswordAuthenticationToken("legacy-user", "secret")));
+	}
+}
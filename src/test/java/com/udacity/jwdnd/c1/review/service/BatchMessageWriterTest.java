@@ -0,0 +1,58 @@
+package com.udacity.jwdnd.c1.review.service;
+
+import com.udacity.jwdnd.c1.review.model.ChatMessage;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:write-behind;DB_CLOSE_DELAY=-1",
+		"chat.write-behind.enabled=true",
+		// long enough for all submissions of a test to end up in one batch
+		"chat.write-behind.max-delay-ms=500"
+})
+class BatchMessageWriterTest {
+
+	@Autowired
+	private BatchMessageWriter batchMessageWriter;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Test
+	void aFailingMessageOnlyRejectsItself() throws Exception {
+		jdbcTemplate.update("INSERT INTO USERS (username) VALUES ('batch-writer')");
+		int userId = jdbcTemplate.queryForObject("SELECT userid FROM USERS WHERE username = 'batch-writer'",
+				Integer.class);
+		// as if another node had already stored seq 2
+		jdbcTemplate.update("INSERT INTO MESSAGES (room, roomseq, userid, messagetext) VALUES ('batch', 2, ?, 'x')",
+				userId);
+
+		List<CompletableFuture<ChatMessage>> futures = new ArrayList<>();
+		for (int roomSeq = 1; roomSeq <= 3; roomSeq++) {
+			ChatMessage chatMessage = new ChatMessage(null, "batch", roomSeq, "batch-writer", "message " + roomSeq);
+			chatMessage.setUserId(userId);
+			batchMessageWriter.reserve();
+			futures.add(batchMessageWriter.submit(chatMessage));
+		}
+
+		assertNotNull(futures.get(0).get().getMessageId());
+		ExecutionException duplicate = assertThrows(ExecutionException.class, () -> futures.get(1).get());
+		assertTrue(duplicate.getCause() instanceof DuplicateKeyException);
+		assertNotNull(futures.get(2).get().getMessageId());
+		assertEquals(3, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM MESSAGES WHERE room = 'batch'",
+				Integer.class));
+	}
+}
@@ -0,0 +1,99 @@
+package com.udacity.jwdnd.c1.review.service;
+
+import com.udacity.jwdnd.c1.review.model.ImportResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:bulk;DB_CLOSE_DELAY=-1")
+class BulkTransferServiceTest {
+	private static final int MESSAGES = 20_000;
+
+	@Autowired
+	private BulkTransferService bulkTransferService;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@BeforeEach
+	void emptyStore() {
+		jdbcTemplate.update("DELETE FROM MESSAGES");
+		jdbcTemplate.update("DELETE FROM USERS");
+	}
+
+	@Test
+	void exportedDataImportsBackUnchanged() throws IOException {
+		jdbcTemplate.update("INSERT INTO USERS (username, salt, password, firstname, lastname, hashiterations, "
+				+ "hashkeylength) VALUES ('bulk-user', 'salt', 'hash', 'Bulk', 'User', 5000, 128)");
+		jdbcTemplate.update("INSERT INTO MESSAGES (room, roomseq, userid, messagetext, messagetype, createdat) "
+				+ "SELECT 'bulk', X, (SELECT userid FROM USERS WHERE username = 'bulk-user'), "
+				+ "'message \"' || X || '\"', 'SAY', CURRENT_TIMESTAMP FROM SYSTEM_RANGE(1, ?)", MESSAGES);
+		byte[] exported = export();
+		emptyStore();
+
+		ImportResult result = bulkTransferService.importFrom(new ByteArrayInputStream(gzip(exported)));
+
+		assertEquals(1, result.getUsers());
+		assertEquals(MESSAGES, result.getMessages());
+		assertArrayEquals(exported, export());
+	}
+
+	@Test
+	void usersWithoutAPasswordImportBackUnchanged() throws IOException {
+		// as created by migrate-messages-userid.sql for authors without an account
+		jdbcTemplate.update("INSERT INTO USERS (username) VALUES ('migrated-author')");
+		jdbcTemplate.update("INSERT INTO MESSAGES (room, roomseq, userid, messagetext) "
+				+ "SELECT 'bulk', 1, userid, 'from before accounts' FROM USERS WHERE username = 'migrated-author'");
+		byte[] exported = export();
+		emptyStore();
+
+		ImportResult result = bulkTransferService.importFrom(new ByteArrayInputStream(exported));
+
+		assertEquals(1, result.getUsers());
+		assertEquals(1, result.getMessages());
+		assertArrayEquals(exported, export());
+	}
+
+	@Test
+	void importIntoAStoreWithMessagesIsRejected() {
+		jdbcTemplate.update("INSERT INTO USERS (username) VALUES ('someone')");
+		jdbcTemplate.update("INSERT INTO MESSAGES (room, roomseq, userid, messagetext) "
+				+ "SELECT 'bulk', 1, userid, 'already here' FROM USERS WHERE username = 'someone'");
+
+		assertThrows(BulkImportException.class, () -> bulkTransferService.importFrom(
+				new ByteArrayInputStream(new byte[0])));
+	}
+
+	@Test
+	void malformedLinesAreRejected() {
+		byte[] body = "{\"kind\":\"message\",\"room\":\"bulk\"}\n".getBytes(StandardCharsets.UTF_8);
+
+		assertThrows(BulkImportException.class, () -> bulkTransferService.importFrom(new ByteArrayInputStream(body)));
+	}
+
+	private byte[] export() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		bulkTransferService.export(out);
+		return out.toByteArray();
+	}
+
+	private static byte[] gzip(byte[] data) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
+			gzipOut.write(data);
+		}
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,43 @@
+package com.udacity.jwdnd.c1.review.service;
+
+import com.udacity.jwdnd.c1.review.mapper.MessageMapper;
+import com.udacity.jwdnd.c1.review.model.ChatMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChangeLogMessageEventBusTest {
+	private MessageMapper messageMapper = mock(MessageMapper.class);
+	private ChangeLogMessageEventBus eventBus = new ChangeLogMessageEventBus(messageMapper, 200, 500, 60_000);
+
+	@Test
+	void openGapIsLookedUpByIdWhileReadingCarriesOn() {
+		List<Integer> received = new ArrayList<>();
+		eventBus.subscribe(chatMessage -> received.add(chatMessage.getMessageId()));
+		when(messageMapper.getMessagesAfter(0, 500)).thenReturn(List.of(message(1), message(3)));
+		eventBus.poll();
+		assertEquals(1, eventBus.getWatermark());
+
+		when(messageMapper.getMessagesAfter(3, 500)).thenReturn(List.of(message(4)));
+		eventBus.poll();
+		when(messageMapper.getMessagesByIds(List.of(2))).thenReturn(List.of(message(2)));
+		eventBus.poll();
+
+		verify(messageMapper, times(1)).getMessagesAfter(0, 500);
+		verify(messageMapper, times(2)).getMessagesByIds(List.of(2));
+		verify(messageMapper).getMessagesAfter(4, 500);
+		assertEquals(List.of(1, 3, 4, 2), received);
+		assertEquals(4, eventBus.getWatermark());
+	}
+
+	private static ChatMessage message(int messageId) {
+		return new ChatMessage(messageId, "general", messageId, "someone", "message " + messageId);
+	}
+}
@@ -0,0 +1,78 @@
+package com.udacity.jwdnd.c1.review.service;
+
+import com.udacity.jwdnd.c1.review.model.ChatMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ChatRoomTest {
+	private List<Integer> published = new ArrayList<>();
+
+	@Test
+	void messageArrivingBehindANewerOneIsNotSkipped() {
+		ChatRoom chatRoom = loadedRoom(60_000);
+		chatRoom.messageVisible(message(1));
+		// seq 2 comes from another node and reaches us after our own seq 3
+		chatRoom.advanceSeq(2);
+		chatRoom.messageVisible(message(3));
+
+		assertEquals(1, chatRoom.getVisibleSeq());
+		assertEquals(List.of(1), seqs(chatRoom.getRecentMessages().getAfter(0, chatRoom.getVisibleSeq(), 10)));
+		assertEquals(List.of(1), published);
+
+		chatRoom.messageVisible(message(2));
+
+		assertEquals(3, chatRoom.getVisibleSeq());
+		assertEquals(List.of(2, 3), seqs(chatRoom.getRecentMessages().getAfter(1, chatRoom.getVisibleSeq(), 10)));
+		assertEquals(List.of(1, 2, 3), published);
+	}
+
+	@Test
+	void releasedSequenceNumbersAreReusedOrSkipped() {
+		ChatRoom chatRoom = loadedRoom(60_000);
+		int first = chatRoom.nextSeq();
+		chatRoom.releaseSeq(first);
+		assertEquals(first, chatRoom.nextSeq());
+
+		int second = chatRoom.nextSeq();
+		int third = chatRoom.nextSeq();
+		chatRoom.messageVisible(message(first));
+		chatRoom.messageVisible(message(third));
+		chatRoom.releaseSeq(second);
+
+		assertEquals(third, chatRoom.getVisibleSeq());
+		assertEquals(List.of(first, third), published);
+	}
+
+	@Test
+	void gapThatNeverFillsIsGivenUpOn() throws InterruptedException {
+		ChatRoom chatRoom = loadedRoom(20);
+		chatRoom.advanceSeq(2);
+		chatRoom.messageVisible(message(2));
+		assertEquals(0, chatRoom.getVisibleSeq());
+
+		Thread.sleep(30);
+
+		assertEquals(2, chatRoom.getVisibleSeq());
+		assertEquals(List.of(2), published);
+	}
+
+	private ChatRoom loadedRoom(long gapTimeoutMillis) {
+		ChatRoom chatRoom = new ChatRoom("test", 16, gapTimeoutMillis,
+				chatMessage -> published.add(chatMessage.getRoomSeq()));
+		chatRoom.markLoaded();
+		return chatRoom;
+	}
+
+	private static ChatMessage message(int roomSeq) {
+		return new ChatMessage(roomSeq, "test", roomSeq, "someone", "message " + roomSeq);
+	}
+
+	private static List<Integer> seqs(List<ChatMessage> messages) {
+		return messages.stream().map(ChatMessage::getRoomSeq).collect(Collectors.toList());
+	}
+}
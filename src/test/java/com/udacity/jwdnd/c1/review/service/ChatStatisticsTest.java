@@ -0,0 +1,83 @@
+package com.udacity.jwdnd.c1.review.service;
+
+import com.udacity.jwdnd.c1.review.mapper.UserMapper;
+import com.udacity.jwdnd.c1.review.model.ChatMessage;
+import com.udacity.jwdnd.c1.review.model.MessageType;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+class ChatStatisticsTest {
+	// only rebuild() touches the message mapper, the archive and the transaction manager
+	private ChatStatistics chatStatistics = new ChatStatistics(null, null, new UserNameCache(mock(UserMapper.class)),
+			null);
+
+	@Test
+	void countsByTypeAndUser() {
+		chatStatistics.record(message(1, MessageType.SAY));
+		chatStatistics.record(message(1, MessageType.SHOUT));
+		chatStatistics.record(message(2, MessageType.SAY));
+		chatStatistics.record(message(2, null));
+
+		assertEquals(4, chatStatistics.getTotalMessages());
+		assertEquals(2, chatStatistics.getMessages(MessageType.SAY));
+		assertEquals(1, chatStatistics.getMessages(MessageType.SHOUT));
+		assertEquals(0, chatStatistics.getMessages(MessageType.WHISPER));
+		assertEquals(2, chatStatistics.getMessagesByUser(1));
+		assertEquals(0, chatStatistics.getMessagesByUser(3));
+		assertEquals(2, chatStatistics.getTrackedUsers());
+	}
+
+	@Test
+	void slidingWindowsOnlyCountRecentPosts() {
+		long now = 1_700_000_000L;
+		for (int i = 0; i < 6; i++) {
+			chatStatistics.recordPost(now - 10, now);
+		}
+		for (int i = 0; i < 4; i++) {
+			chatStatistics.recordPost(now - 4 * 60, now);
+		}
+		chatStatistics.recordPost(now - 20 * 60, now);
+
+		assertEquals(6.0, chatStatistics.getPostsPerMinute(1, now));
+		assertEquals(2.0, chatStatistics.getPostsPerMinute(5, now));
+		assertEquals(10.0 / 15, chatStatistics.getPostsPerMinute(15, now), 1e-9);
+		// a full window later the same slots count nothing
+		assertEquals(0.0, chatStatistics.getPostsPerMinute(15, now + ChatStatistics.WINDOW_SECONDS));
+	}
+
+	@Test
+	void concurrentPostersAreAllCounted() throws InterruptedException {
+		List<Thread> posters = new ArrayList<>();
+		for (int t = 0; t < 8; t++) {
+			int userId = t % 2;
+			Thread poster = new Thread(() -> {
+				for (int i = 0; i < 1000; i++) {
+					chatStatistics.record(message(userId, MessageType.SAY));
+				}
+			});
+			posters.add(poster);
+			poster.start();
+		}
+		for (Thread poster : posters) {
+			poster.join();
+		}
+
+		assertEquals(8000, chatStatistics.getTotalMessages());
+		assertEquals(4000, chatStatistics.getMessagesByUser(1));
+		assertEquals(8000.0, chatStatistics.getPostsPerMinute(1));
+	}
+
+	private static ChatMessage message(int userId, MessageType messageType) {
+		ChatMessage chatMessage = new ChatMessage(null, "stats", 1, null, "hi");
+		chatMessage.setUserId(userId);
+		chatMessage.setMessageType(messageType);
+		chatMessage.setCreatedAt(Instant.now());
+		return chatMessage;
+	}
+}
@@ -0,0 +1,101 @@
+package com.udacity.jwdnd.c1.review.service;
+
+import com.udacity.jwdnd.c1.review.ReviewApplication;
+import com.udacity.jwdnd.c1.review.mapper.UserMapper;
+import com.udacity.jwdnd.c1.review.model.ChatMessage;
+import com.udacity.jwdnd.c1.review.model.MessageType;
+import com.udacity.jwdnd.c1.review.model.User;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Two app contexts in one JVM sharing one database, the way two nodes share one in production.
+ */
+class CrossNodeFanOutTest {
+
+	private static ConfigurableApplicationContext nodeA;
+	private static ConfigurableApplicationContext nodeB;
+
+	@BeforeAll
+	static void startNodes() {
+		nodeA = startNode();
+		nodeB = startNode();
+		UserMapper userMapper = nodeA.getBean(UserMapper.class);
+		userMapper.insert(new User(null, "alice", "salt", "hash", "Alice", "A", 5000, 128));
+		userMapper.insert(new User(null, "bob", "salt", "hash", "Bob", "B", 5000, 128));
+	}
+
+	@AfterAll
+	static void stopNodes() {
+		nodeB.close();
+		nodeA.close();
+	}
+
+	@Test
+	void messagePostedOnOneNodeReachesTheOther() throws InterruptedException {
+		MessageService serviceA = nodeA.getBean(MessageService.class);
+		MessageService serviceB = nodeB.getBean(MessageService.class);
+		serviceB.getLatestMessages("fan-out");
+
+		serviceA.addChatMessage("alice", "fan-out", "hello from a", MessageType.SAY);
+
+		awaitTrue(() -> texts(serviceB, "fan-out").contains("alice: hello from a"));
+		assertEquals(1, serviceB.getRoomVersion("fan-out"));
+
+		serviceB.addChatMessage("bob", "fan-out", "hello from b", MessageType.SAY);
+
+		List<ChatMessage> messages = serviceB.getLatestMessages("fan-out").getMessages();
+		assertEquals(2, messages.get(1).getRoomSeq());
+		awaitTrue(() -> texts(serviceA, "fan-out").contains("bob: hello from b"));
+	}
+
+	@Test
+	void nodesPostingBeforeTheyHearFromEachOtherGetDistinctSequences() throws InterruptedException {
+		MessageService serviceA = nodeA.getBean(MessageService.class);
+		MessageService serviceB = nodeB.getBean(MessageService.class);
+		serviceA.getLatestMessages("race");
+		serviceB.getLatestMessages("race");
+
+		serviceA.addChatMessage("alice", "race", "first", MessageType.SAY);
+		serviceB.addChatMessage("bob", "race", "second", MessageType.SAY);
+
+		awaitTrue(() -> texts(serviceA, "race").size() == 2 && texts(serviceB, "race").size() == 2);
+		assertEquals(texts(serviceA, "race"), texts(serviceB, "race"));
+		assertEquals(List.of(1, 2), serviceA.getLatestMessages("race").getMessages().stream()
+				.map(ChatMessage::getRoomSeq).collect(Collectors.toList()));
+	}
+
+	private static ConfigurableApplicationContext startNode() {
+		return new SpringApplicationBuilder(ReviewApplication.class).run(
+				"--server.port=0",
+				"--management.server.port=-1",
+				"--spring.datasource.url=jdbc:h2:mem:crossnode;DB_CLOSE_DELAY=-1",
+				"--spring.devtools.restart.enabled=false",
+				"--spring.jmx.enabled=false",
+				"--chat.event-bus.type=change-log",
+				"--chat.event-bus.change-log.poll-interval-ms=20");
+	}
+
+	private static List<String> texts(MessageService messageService, String room) {
+		return messageService.getLatestMessages(room).getMessages().stream()
+				.map(ChatMessage::toString).collect(Collectors.toList());
+	}
+
+	private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10_000;
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.currentTimeMillis() < deadline, "timed out waiting for the other node");
+			Thread.sleep(20);
+		}
+	}
+}
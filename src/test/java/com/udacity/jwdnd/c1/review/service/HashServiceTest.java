@@ -0,0 +1,84 @@
+package com.udacity.jwdnd.c1.review.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HashServiceTest {
+	private static final String SALT = "c2FsdHNhbHRzYWx0c2FsdA==";
+
+	private HashService hashService;
+
+	@AfterEach
+	void shutdown() {
+		hashService.shutdown();
+	}
+
+	@Test
+	void calibrationStaysWithinBounds() {
+		hashService = new HashService(1, 8, 10000, 5, 5000, 50000, 256);
+		hashService.calibrate();
+
+		int iterations = hashService.getTargetIterations();
+		assertTrue(iterations >= 5000 && iterations <= 50000, "iterations: " + iterations);
+		assertEquals(0, iterations % 1000);
+	}
+
+	@Test
+	void legacyCostStillMatchesStoredHashes() throws Exception {
+		hashService = new HashService(1, 8, 10000, 0, 20000, 20000, 256);
+		hashService.calibrate();
+
+		PBEKeySpec spec = new PBEKeySpec("secret".toCharArray(), SALT.getBytes(), 5000, 128);
+		String legacyHash = Base64.getEncoder().encodeToString(
+				SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1").generateSecret(spec).getEncoded());
+
+		assertEquals(legacyHash, hashService.getHashedValue("secret", SALT,
+				HashService.LEGACY_ITERATIONS, HashService.LEGACY_KEY_LENGTH));
+		assertNotEquals(legacyHash, hashService.getHashedValue("secret", SALT));
+	}
+
+	@Test
+	void onlyHashesBelowTheCurrentCostNeedRehashing() throws Exception {
+		hashService = new HashService(1, 8, 10000, 0, 20000, 20000, 256);
+		hashService.calibrate();
+
+		assertTrue(hashService.needsRehash(HashService.LEGACY_ITERATIONS, HashService.LEGACY_KEY_LENGTH));
+		assertTrue(hashService.needsRehash(15000, 256));
+		assertTrue(hashService.needsRehash(20000, 128));
+		assertFalse(hashService.needsRehash(20000, 256));
+		// a little below the target is calibration noise, and stronger hashes are never downgraded
+		assertFalse(hashService.needsRehash(17000, 256));
+		assertFalse(hashService.needsRehash(60000, 256));
+		assertFalse(hashService.needsRehash(20000, 512));
+		assertEquals(hashService.getHashedValue("secret", SALT),
+				hashService.hashInBackground("secret", SALT, 20000, 256).get());
+		assertEquals(hashService.getHashedValue("secret", SALT),
+				hashService.hashAsync("secret", SALT, 20000, 256).get());
+	}
+
+	@Test
+	void asyncHashFailsInsteadOfQueueingPastTheLimit() throws Exception {
+		hashService = new HashService(1, 1, 10000, 0, 5000, 5000, 256);
+
+		// one slow hash runs, one waits in the queue, the third has nowhere to go
+		hashService.hashAsync("secret", SALT, 2_000_000, 256);
+		hashService.hashAsync("secret", SALT, 2_000_000, 256);
+		CompletableFuture<String> rejected = hashService.hashAsync("secret", SALT, 5000, 256);
+
+		ExecutionException e = assertThrows(ExecutionException.class, rejected::get);
+		assertTrue(e.getCause() instanceof HashingUnavailableException);
+		assertEquals(1, hashService.getRejectedHashes());
+	}
+}
@@ -0,0 +1,74 @@
+package com.udacity.jwdnd.c1.review.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IdempotencyKeyStoreTest {
+	private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	@Test
+	void repeatedKeyIsAbsorbedAndCounted() {
+		IdempotencyKeyStore store = new IdempotencyKeyStore(meterRegistry, 60_000, 100);
+
+		assertTrue(store.claim("alice", "k1", "hello"));
+		assertFalse(store.claim("alice", "k1", "hello"));
+		assertFalse(store.claim("alice", "k1", "hello"));
+		// keys are per user, and a different message under the same key is a new submission
+		assertTrue(store.claim("bob", "k1", "hello"));
+		assertTrue(store.claim("alice", "k1", "something else"));
+
+		assertEquals(2.0, meterRegistry.counter("chat.post.duplicates").count());
+	}
+
+	@Test
+	void contentWithTheSameHashCodeIsANewSubmission() {
+		IdempotencyKeyStore store = new IdempotencyKeyStore(meterRegistry, 60_000, 100);
+
+		assertEquals("Aa".hashCode(), "BB".hashCode());
+		assertTrue(store.claim("alice", "k1", "Aa"));
+		assertTrue(store.claim("alice", "k1", "BB"));
+	}
+
+	@Test
+	void releasedAndExpiredKeysCanBeReused() throws InterruptedException {
+		IdempotencyKeyStore store = new IdempotencyKeyStore(meterRegistry, 50, 100);
+
+		assertTrue(store.claim("alice", "k1", "hello"));
+		store.release("alice", "k1");
+		assertTrue(store.claim("alice", "k1", "hello"));
+		Thread.sleep(60);
+		assertTrue(store.claim("alice", "k1", "hello"));
+	}
+
+	@Test
+	void aFullStoreStopsTracking() {
+		IdempotencyKeyStore store = new IdempotencyKeyStore(meterRegistry, 60_000, 2);
+
+		assertTrue(store.claim("alice", "k1", "hello"));
+		assertTrue(store.claim("alice", "k2", "hello"));
+		assertTrue(store.claim("alice", "k3", "hello"));
+		assertTrue(store.claim("alice", "k3", "hello"));
+
+		assertEquals(2, store.getTrackedKeys());
+		assertEquals(2.0, meterRegistry.counter("chat.post.untracked").count());
+	}
+
+	@Test
+	void aFullStoreTracksAgainOnceItsKeysExpire() throws InterruptedException {
+		IdempotencyKeyStore store = new IdempotencyKeyStore(meterRegistry, 50, 2);
+
+		assertTrue(store.claim("alice", "k1", "hello"));
+		assertTrue(store.claim("alice", "k2", "hello"));
+		assertTrue(store.claim("alice", "k3", "hello"));
+		Thread.sleep(60);
+
+		assertTrue(store.claim("alice", "k3", "hello"));
+		assertFalse(store.claim("alice", "k3", "hello"));
+		assertEquals(1, store.getTrackedKeys());
+	}
+}
@@ -0,0 +1,28 @@
+package com.udacity.jwdnd.c1.review.service;
+
+import com.udacity.jwdnd.c1.review.model.ChatMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MessageSearchIndexTest {
+
+	@Test
+	void prefixMatchesEveryExpandedTermOrIsRejected() {
+		MessageSearchIndex index = new MessageSearchIndex(null, 10_000);
+		for (int i = 1; i <= 300; i++) {
+			index.add(new ChatMessage(i, "someone", "word" + i + " tail" + (i % 2)));
+		}
+
+		// 111 terms start with word1, the oldest of them is word1 itself
+		List<Integer> hits = index.search("word1*", null, Integer.MAX_VALUE, 200);
+		assertEquals(111, hits.size());
+		assertEquals(1, hits.get(hits.size() - 1));
+		assertEquals(List.of(2), index.search("word2* tail0", null, 3, 10));
+
+		assertThrows(SearchQueryTooBroadException.class, () -> index.search("word*", null, Integer.MAX_VALUE, 10));
+	}
+}
@@ -0,0 +1,59 @@
+package com.udacity.jwdnd.c1.review.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterTest {
+	private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	@Test
+	void userBucketAllowsItsBurstThenThrottles() {
+		RateLimiter rateLimiter = new RateLimiter(meterRegistry, true, 3, 0.001, 1000, 1000, 60000);
+
+		for (int i = 0; i < 3; i++) {
+			rateLimiter.acquire("noisy");
+		}
+		RateLimitExceededException e = assertThrows(RateLimitExceededException.class,
+				() -> rateLimiter.acquire("noisy"));
+
+		assertTrue(e.getRetryAfterSeconds() > 900);
+		rateLimiter.acquire("quiet");
+		assertEquals(1.0, meterRegistry.counter("chat.rate.limited", "scope", "user").count());
+	}
+
+	@Test
+	void globalBucketIsSharedByAllUsers() {
+		RateLimiter rateLimiter = new RateLimiter(meterRegistry, true, 10, 10, 2, 0.001, 60000);
+
+		rateLimiter.acquire("first");
+		rateLimiter.acquire("second");
+
+		assertThrows(RateLimitExceededException.class, () -> rateLimiter.acquire("third"));
+		assertEquals(1.0, meterRegistry.counter("chat.rate.limited", "scope", "global").count());
+	}
+
+	@Test
+	void refilledBucketsAreEvicted() throws InterruptedException {
+		RateLimiter rateLimiter = new RateLimiter(meterRegistry, true, 5, 1000, 1000, 1000, 1);
+
+		rateLimiter.acquire("idle");
+		Thread.sleep(20);
+		rateLimiter.acquire("active");
+
+		assertEquals(1, rateLimiter.getTrackedUsers());
+	}
+
+	@Test
+	void disabledLimiterNeverThrottles() {
+		RateLimiter rateLimiter = new RateLimiter(meterRegistry, false, 1, 0.001, 1, 0.001, 60000);
+
+		for (int i = 0; i < 10; i++) {
+			rateLimiter.acquire("anyone");
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package com.udacity.jwdnd.c1.review.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserNameBloomFilterTest {
+	// only load() touches the mapper and the transaction manager
+	private UserNameBloomFilter filter = new UserNameBloomFilter(null, null, 10_000, 0.01);
+
+	@Test
+	void addedNamesAreAlwaysFound() {
+		for (int i = 0; i < 10_000; i++) {
+			filter.add("user" + i);
+		}
+		for (int i = 0; i < 10_000; i++) {
+			assertTrue(filter.mightContain("user" + i));
+		}
+	}
+
+	@Test
+	void falsePositivesStayNearTheConfiguredRate() {
+		for (int i = 0; i < 10_000; i++) {
+			filter.add("user" + i);
+		}
+		int falsePositives = 0;
+		for (int i = 0; i < 100_000; i++) {
+			if (filter.mightContain("other" + i)) {
+				falsePositives++;
+			}
+		}
+		assertTrue(falsePositives < 2_000, falsePositives + " false positives in 100000");
+	}
+}
@@ -0,0 +1,44 @@
+package com.udacity.jwdnd.c1.review.service;
+
+import com.udacity.jwdnd.c1.review.mapper.UserMapper;
+import com.udacity.jwdnd.c1.review.model.ChatMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserNameCacheTest {
+	private UserMapper userMapper = mock(UserMapper.class);
+	private UserNameCache userNameCache = new UserNameCache(userMapper);
+
+	@Test
+	void messagesOfOneUserShareTheName() {
+		when(userMapper.getUserName(7)).thenAnswer(invocation -> new String("alice"));
+		List<ChatMessage> chatMessages = userNameCache.named(List.of(message(7), message(7)));
+
+		assertEquals("alice", chatMessages.get(0).getUserName());
+		assertSame(chatMessages.get(0).getUserName(), chatMessages.get(1).getUserName());
+		assertEquals(7, userNameCache.getUserId("alice"));
+		verify(userMapper, times(1)).getUserName(7);
+	}
+
+	@Test
+	void unknownUsersAreNotCached() {
+		assertNull(userNameCache.getUserName(8));
+		assertNull(userNameCache.getUserId("nobody"));
+		assertEquals(0, userNameCache.size());
+	}
+
+	private static ChatMessage message(int userId) {
+		ChatMessage chatMessage = new ChatMessage(null, "general", 1, null, "hi");
+		chatMessage.setUserId(userId);
+		return chatMessage;
+	}
+}
@@ -0,0 +1,65 @@
+package com.udacity.jwdnd.c1.review.service;
+
+import com.udacity.jwdnd.c1.review.model.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+@SpringBootTest
+class UserServiceTest {
+
+	@Autowired
+	private UserService userService;
+
+	@Test
+	void aTakenNameIsReportedAndRejected() {
+		assertTrue(userService.isUsernameAvailable("signup-once"));
+		userService.createUser(new User(null, "signup-once", null, "secret", "Signup", "Once"));
+
+		assertFalse(userService.isUsernameAvailable("signup-once"));
+		assertThrows(UserNameTakenException.class, () -> userService.createUser(
+				new User(null, "signup-once", null, "other", "Signup", "Twice")));
+	}
+
+	@Test
+	void onlyOneOfConcurrentSignupsForANameSucceeds() throws InterruptedException {
+		int threads = 4;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<Integer>> signups = new ArrayList<>();
+		for (int i = 0; i < threads; i++) {
+			signups.add(executor.submit(() -> {
+				start.await();
+				return userService.createUser(new User(null, "signup-race", null, "secret", "Signup", "Race"));
+			}));
+		}
+		start.countDown();
+
+		int created = 0;
+		for (Future<Integer> signup : signups) {
+			try {
+				created += signup.get();
+			} catch (ExecutionException e) {
+				if (!(e.getCause() instanceof UserNameTakenException)) {
+					fail(e.getCause());
+				}
+			}
+		}
+		executor.shutdown();
+		assertEquals(1, created);
+	}
+}